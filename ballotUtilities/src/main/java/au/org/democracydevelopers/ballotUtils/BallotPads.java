@@ -0,0 +1,177 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
+
+/* Ballots of up to 7 candidates as bitmaps in a long, the way BallotInterpretationFunctionExperiments enumerates
+ * them: bit (n*i + j) is set if candidate i is given rank j+1. So each candidate's marks are an n-bit row, and
+ * each rank is a column. With n=3:
+ * C(3), C(2), C(1),
+ * B(3), B(2), B(1),
+ * A(3), A(2), A(1)
+ * The candidates are called A, B, C, ... in that order.
+ * The rules and IsValid work on whole rows and columns at once, without making any objects, and give the same
+ * results as they do on IRVChoices or EncodedBallots.
+ */
+public class BallotPads {
+
+    public static final int MAX_CANDIDATES = 7;
+    // What an interpretation returns for a ballot that it can't give as a pad. It is never valid.
+    public static final long NOT_A_PAD = -1L;
+
+    private static final String[] NAMES = {"A", "B", "C", "D", "E", "F", "G"};
+
+    private final int numCandidates;
+    // The bits of one candidate's row.
+    private final long rowMask;
+    // Rank 1 for every candidate, so that rankMask * firstColumn is rankMask copied into every row.
+    private final long firstColumn;
+    private final long allMarks;
+
+    public BallotPads(int numCandidates) {
+        if (numCandidates < 1 || numCandidates > MAX_CANDIDATES) {
+            throw new IllegalArgumentException("Pads can have 1 to " + MAX_CANDIDATES + " candidates");
+        }
+        this.numCandidates = numCandidates;
+        this.rowMask = (1L << numCandidates) - 1;
+        long firstColumn = 0;
+        for (int i = 0; i < numCandidates; i++) {
+            firstColumn |= 1L << (numCandidates * i);
+        }
+        this.firstColumn = firstColumn;
+        this.allMarks = (1L << (numCandidates * numCandidates)) - 1;
+    }
+
+    public int getNumCandidates() {
+        return numCandidates;
+    }
+
+    // The number of pads, 2^(n*n).
+    public long size() {
+        return allMarks + 1;
+    }
+
+    // Candidate i's row: bit j is set if i is given rank j+1.
+    public long getRow(long pad, int candidate) {
+        return (pad >>> (numCandidates * candidate)) & rowMask;
+    }
+
+    // See IRVChoices.IsValid: each candidate and each rank is used at most once, and the ranks are 1, 2, ...
+    public boolean IsValid(long pad) {
+        if ((pad & ~allMarks) != 0) {
+            return false;
+        }
+        long ranksUsed = 0;
+        for (int i = 0; i < numCandidates; i++) {
+            long row = getRow(pad, i);
+            if ((row & (row - 1)) != 0 || (ranksUsed & row) != 0) {
+                return false;
+            }
+            ranksUsed |= row;
+        }
+        return (ranksUsed & (ranksUsed + 1)) == 0;
+    }
+
+    // See IRVChoices.ApplyRule1: remove everything from the first overvoted rank on.
+    public long ApplyRule1(long pad) {
+        long once = 0;
+        long twice = 0;
+        for (int i = 0; i < numCandidates; i++) {
+            long row = getRow(pad, i);
+            twice |= once & row;
+            once |= row;
+        }
+        if (twice == 0) {
+            return pad;
+        }
+        return pad & (((twice & -twice) - 1) * firstColumn);
+    }
+
+    // See IRVChoices.ApplyRule2: remove everything after the first skipped rank, or everything if rank 1 is skipped.
+    public long ApplyRule2(long pad) {
+        long ranksUsed = 0;
+        for (int i = 0; i < numCandidates; i++) {
+            ranksUsed |= getRow(pad, i);
+        }
+        // The ranks before the lowest one that isn't used.
+        long kept = (~ranksUsed & (ranksUsed + 1)) - 1;
+        return pad & (kept * firstColumn);
+    }
+
+    // See IRVChoices.ApplyRule3: keep only the first (highest-ranked) mention of each candidate.
+    public long ApplyRule3(long pad) {
+        long result = 0;
+        for (int i = 0; i < numCandidates; i++) {
+            long row = getRow(pad, i);
+            result |= (row & -row) << (numCandidates * i);
+        }
+        return result;
+    }
+
+    public long apply(InterpretationRule rule, long pad) {
+        return switch (rule) {
+            case OVERVOTES -> ApplyRule1(pad);
+            case SKIPPED_RANKS -> ApplyRule2(pad);
+            case DUPLICATES -> ApplyRule3(pad);
+        };
+    }
+
+    // The pipeline as a function on pads.
+    public LongUnaryOperator interpreter(RulePipeline pipeline) {
+        InterpretationRule[] rules = pipeline.getRules().toArray(new InterpretationRule[0]);
+        return pad -> {
+            for (InterpretationRule rule : rules) {
+                pad = apply(rule, pad);
+            }
+            return pad;
+        };
+    }
+
+    /* Any interpretation function as a function on pads, by way of IRVChoices. This makes objects for every
+     * ballot, so it is much slower than interpreter(RulePipeline). If the interpretation isn't a pad - it has
+     * a rank above n, or a candidate twice at the same rank - it returns NOT_A_PAD.
+     */
+    public LongUnaryOperator adapt(Function<IRVChoices, IRVChoices> interpretation) {
+        return pad -> fromIRVChoices(interpretation.apply(toIRVChoices(pad)));
+    }
+
+    public IRVChoices toIRVChoices(long pad) {
+        List<Preference> choices = new ArrayList<>();
+        for (int i = 0; i < numCandidates; i++) {
+            for (int j = 0; j < numCandidates; j++) {
+                if ((pad >>> (numCandidates * i + j) & 1) == 1) {
+                    choices.add(new Preference(j + 1, NAMES[i]));
+                }
+            }
+        }
+        return new IRVChoices(choices);
+    }
+
+    public long fromIRVChoices(IRVChoices choices) {
+        long pad = 0;
+        for (Preference preference : choices.getChoices()) {
+            int candidate = -1;
+            for (int i = 0; i < numCandidates; i++) {
+                if (NAMES[i].equals(preference.getCandidateName())) {
+                    candidate = i;
+                }
+            }
+            int rank = preference.getRank();
+            if (candidate < 0 || rank < 1 || rank > numCandidates) {
+                return NOT_A_PAD;
+            }
+            long bit = 1L << (numCandidates * candidate + rank - 1);
+            if ((pad & bit) != 0) {
+                return NOT_A_PAD;
+            }
+            pad |= bit;
+        }
+        return pad;
+    }
+
+    public String toString(long pad) {
+        return pad == NOT_A_PAD ? "not a pad" : toIRVChoices(pad).toString();
+    }
+}
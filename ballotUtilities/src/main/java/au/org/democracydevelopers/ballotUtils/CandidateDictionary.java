@@ -0,0 +1,43 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* The candidates in one contest, numbered 0 .. size()-1 in the order given, so that ballots can refer to them by
+ * number (see EncodedBallot). There can be at most MAX_CANDIDATES, so that a set of them fits in the bits of a long.
+ */
+public class CandidateDictionary {
+
+    public static final int MAX_CANDIDATES = 64;
+
+    private final String[] names;
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    public CandidateDictionary(List<String> candidateNames) {
+        if (candidateNames.size() > MAX_CANDIDATES) {
+            throw new IllegalArgumentException("At most " + MAX_CANDIDATES + " candidates are supported, not "
+                    + candidateNames.size());
+        }
+        names = candidateNames.toArray(new String[0]);
+        for (int i = 0; i < names.length; i++) {
+            if (indices.put(names[i], i) != null) {
+                throw new IllegalArgumentException("Candidate " + names[i] + " is listed twice");
+            }
+        }
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    // The candidate's number, or -1 if they aren't in this contest.
+    public int indexOf(String candidateName) {
+        Integer index = indices.get(candidateName);
+        return index == null ? -1 : index;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+}
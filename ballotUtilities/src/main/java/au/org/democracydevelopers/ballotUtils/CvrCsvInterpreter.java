@@ -0,0 +1,349 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/* Interprets every ballot in a colorado-rla CVR export, as written by StvToCvrTranslatorUtil: four header lines,
+ * the third of which names the vote columns CandidateName(rank), and then one row per ballot, with seven columns
+ * (CvrNumber, TabulatorNum, BatchId, RecordId, ImprintedId, PrecinctPortion, BallotType) followed by a 0 or 1 for
+ * each candidate and rank. Only one contest per file is supported.
+ * Each row's marks are decoded into a ballot and interpreted with a RulePipeline, and the output has a row per
+ * ballot: CvrNumber,ImprintedId,"Interpretation" where the interpretation is in the usual CandidateName(rank),...
+ * form. The number of ballots each rule changed is counted, along with the ballots that were valid as cast and
+ * the ones that were blank after interpretation.
+ * The rows are read in blocks, which are interpreted by a pool of threads and written out in order. Each distinct
+ * set of marks is only interpreted once (see InterpretationCache), so a big county costs little more than its
+ * distinct ballots.
+ * mvn compile exec:java -Dexec.mainClass="au.org.democracydevelopers.ballotUtils.CvrCsvInterpreter" -Dexec.args="cvrFile.csv output.csv [--rules=3,1,2] [--threads=N]"
+ * --rules lists the Rule 26.7 steps in order, by their last digit: the default, 3,1,2, is DuplicatesBeforeOvervotes.
+ */
+public class CvrCsvInterpreter {
+
+    private static final int HEADER_LINES = 4;
+    private static final int FIRST_VOTE_COLUMN = 7;
+    private static final int IMPRINTED_ID_COLUMN = 4;
+    private static final int BLOCK_ROWS = 1 << 14;
+    private static final int DEFAULT_CACHE_SIZE = 1 << 16;
+
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        String rules = "3,1,2";
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (String arg : args) {
+            if (arg.startsWith("--rules=")) {
+                rules = arg.substring("--rules=".length());
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else {
+                positional.add(arg);
+            }
+        }
+        if (positional.size() != 2) {
+            System.err.println("Usage: mvn compile exec:java -Dexec.mainClass=\"au.org.democracydevelopers.ballotUtils.CvrCsvInterpreter\" -Dexec.args=\"cvrFile.csv output.csv [--rules=3,1,2] [--threads=N]\"");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        CvrCsvInterpreter interpreter = new CvrCsvInterpreter(RulePipeline.parse(rules), threads, DEFAULT_CACHE_SIZE);
+        Summary summary = interpreter.interpret(Paths.get(positional.get(0)), Paths.get(positional.get(1)));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.print(summary);
+        System.out.printf("%.3f s (%.0f ballots/s)\n", seconds, summary.getBallots() / seconds);
+    }
+
+    // The counts for a whole file.
+    public static class Summary {
+        private final RulePipeline pipeline;
+        // Ballots, valid as cast, blank after interpretation, then the number changed by each step of the pipeline.
+        private final long[] counts;
+
+        private Summary(RulePipeline pipeline, long[] counts) {
+            this.pipeline = pipeline;
+            this.counts = counts;
+        }
+
+        public long getBallots() {
+            return counts[0];
+        }
+
+        public long getValidAsCast() {
+            return counts[1];
+        }
+
+        public long getBlankAfterInterpretation() {
+            return counts[2];
+        }
+
+        // The number of ballots changed by the given step (counting from 0) of the pipeline.
+        public long getChangedBy(int step) {
+            return counts[3 + step];
+        }
+
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append(String.format("%d ballots, %d valid as cast, %d blank after interpretation\n", getBallots(),
+                    getValidAsCast(), getBlankAfterInterpretation()));
+            List<InterpretationRule> rules = pipeline.getRules();
+            for (int step = 0; step < rules.size(); step++) {
+                s.append(String.format("Step %d, rule %s (%s): changed %d ballots\n", step + 1,
+                        rules.get(step).getRuleNumber(), rules.get(step), getChangedBy(step)));
+            }
+            return s.toString();
+        }
+    }
+
+    // The result of interpreting one distinct set of marks.
+    private record Interpretation(byte[] rendered, int changedSteps, boolean validAsCast, boolean blank) {
+    }
+
+    private final RulePipeline pipeline;
+    private final int threads;
+    private final int cacheSize;
+
+    public CvrCsvInterpreter(RulePipeline pipeline, int threads, int cacheSize) {
+        if (pipeline.getRules().size() > Integer.SIZE) {
+            throw new IllegalArgumentException("A pipeline can have at most " + Integer.SIZE + " rules");
+        }
+        this.pipeline = pipeline;
+        this.threads = Math.max(1, threads);
+        this.cacheSize = cacheSize;
+    }
+
+    public Summary interpret(Path cvrFile, Path outputFile) throws Exception {
+        long[] totals = new long[3 + pipeline.getRules().size()];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (BufferedReader in = Files.newBufferedReader(cvrFile, StandardCharsets.UTF_8);
+             OutputStream out = Files.newOutputStream(outputFile)) {
+            String[] headers = new String[HEADER_LINES];
+            for (int i = 0; i < HEADER_LINES; i++) {
+                headers[i] = in.readLine();
+                if (headers[i] == null) {
+                    throw new RuntimeException(cvrFile + " is too short to be a CVR export");
+                }
+            }
+            Contest contest = new Contest(headers);
+            out.write("CvrNumber,ImprintedId,Interpretation\n".getBytes(StandardCharsets.UTF_8));
+
+            // Blocks being interpreted, oldest first, so that they are written in order. At most two per thread
+            // are in flight, which keeps all the threads busy without reading the whole file in.
+            Deque<Future<Block>> inFlight = new ArrayDeque<>();
+            long lineNumber = HEADER_LINES;
+            while (true) {
+                String[] lines = new String[BLOCK_ROWS];
+                int count = 0;
+                for (String line; count < BLOCK_ROWS && (line = in.readLine()) != null; ) {
+                    lines[count++] = line;
+                }
+                if (count == 0) {
+                    break;
+                }
+                final int rows = count;
+                final long firstLine = lineNumber + 1;
+                lineNumber += count;
+                inFlight.add(executor.submit(() -> contest.interpretBlock(lines, rows, firstLine)));
+                if (inFlight.size() >= 2 * threads) {
+                    writeBlock(inFlight.poll(), out, totals);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                writeBlock(inFlight.poll(), out, totals);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Summary(pipeline, totals);
+    }
+
+    private record Block(byte[] output, long[] counts) {
+    }
+
+    private static void writeBlock(Future<Block> future, OutputStream out, long[] totals) throws Exception {
+        Block block;
+        try {
+            block = future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+        out.write(block.output());
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] += block.counts()[i];
+        }
+    }
+
+    // What the header says about the vote columns, and the interpretations of the sets of marks seen so far.
+    private class Contest {
+        private final CandidateDictionary candidates;
+        // The packed (rank, candidate) pair for each vote column.
+        private final int[] columnPairs;
+        private final InterpretationCache<String, Interpretation> cache;
+
+        Contest(String[] headers) {
+            List<String> contests = splitCsvLine(headers[1]);
+            List<String> columns = splitCsvLine(headers[2]);
+            List<String> names = new ArrayList<>();
+            List<Preference> preferences = new ArrayList<>();
+            for (int c = FIRST_VOTE_COLUMN; c < columns.size(); c++) {
+                if (c < contests.size() && !contests.get(c).equals(contests.get(FIRST_VOTE_COLUMN))) {
+                    throw new RuntimeException("Only one contest per file is supported, but column " + (c + 1)
+                            + " is for " + contests.get(c));
+                }
+                IRVChoicesParser.Status status = IRVChoicesParser.parse(columns.get(c), preferences);
+                if (status != IRVChoicesParser.Status.OK || preferences.size() != c - FIRST_VOTE_COLUMN + 1) {
+                    throw new RuntimeException("Column " + (c + 1) + " heading " + columns.get(c)
+                            + " is not CandidateName(rank)");
+                }
+                String name = preferences.get(preferences.size() - 1).getCandidateName();
+                if (!names.contains(name)) {
+                    names.add(name);
+                }
+            }
+            candidates = new CandidateDictionary(names);
+            columnPairs = new int[preferences.size()];
+            for (int i = 0; i < columnPairs.length; i++) {
+                columnPairs[i] = EncodedBallot.pack(preferences.get(i).getRank(),
+                        candidates.indexOf(preferences.get(i).getCandidateName()));
+            }
+            cache = new InterpretationCache<>(cacheSize, this::interpretMarks);
+        }
+
+        Block interpretBlock(String[] lines, int count, long firstLine) {
+            long[] counts = new long[3 + pipeline.getRules().size()];
+            ByteArrayOutputStream output = new ByteArrayOutputStream(count * 32);
+            for (int row = 0; row < count; row++) {
+                String line = lines[row];
+                if (line.isEmpty()) {
+                    continue;
+                }
+                // Find the ends of the fixed columns, allowing for quoted fields.
+                int cvrNumberEnd = -1;
+                int imprintedIdStart = -1;
+                int imprintedIdEnd = -1;
+                int column = 0;
+                boolean quoted = false;
+                int i = 0;
+                for (; i < line.length() && column < FIRST_VOTE_COLUMN; i++) {
+                    char c = line.charAt(i);
+                    if (c == '"') {
+                        quoted = !quoted;
+                    } else if (c == ',' && !quoted) {
+                        if (column == 0) {
+                            cvrNumberEnd = i;
+                        } else if (column == IMPRINTED_ID_COLUMN - 1) {
+                            imprintedIdStart = i + 1;
+                        } else if (column == IMPRINTED_ID_COLUMN) {
+                            imprintedIdEnd = i;
+                        }
+                        column++;
+                    }
+                }
+                if (column < FIRST_VOTE_COLUMN) {
+                    throw new RuntimeException("Line " + (firstLine + row) + " has too few columns");
+                }
+                Interpretation interpretation;
+                try {
+                    interpretation = cache.apply(line.substring(i));
+                } catch (RuntimeException e) {
+                    throw new RuntimeException("Line " + (firstLine + row) + ": " + e.getMessage(), e);
+                }
+
+                counts[0]++;
+                if (interpretation.validAsCast()) {
+                    counts[1]++;
+                }
+                if (interpretation.blank()) {
+                    counts[2]++;
+                }
+                for (int step = 0; step < counts.length - 3; step++) {
+                    if ((interpretation.changedSteps() & (1 << step)) != 0) {
+                        counts[3 + step]++;
+                    }
+                }
+                String prefix = line.substring(0, cvrNumberEnd) + "," + line.substring(imprintedIdStart, imprintedIdEnd) + ",";
+                output.writeBytes(prefix.getBytes(StandardCharsets.UTF_8));
+                output.writeBytes(interpretation.rendered());
+            }
+            return new Block(output.toByteArray(), counts);
+        }
+
+        // Decode the vote columns of a row into a ballot, and apply the pipeline to it one rule at a time.
+        private Interpretation interpretMarks(String marks) {
+            int[] pairs = new int[columnPairs.length];
+            int length = 0;
+            int column = 0;
+            int i = 0;
+            while (i <= marks.length()) {
+                int end = marks.indexOf(',', i);
+                if (end < 0) {
+                    end = marks.length();
+                }
+                String mark = marks.substring(i, end).trim();
+                if (!mark.isEmpty() && !mark.equals("0")) {
+                    if (!mark.equals("1") || column >= columnPairs.length) {
+                        throw new RuntimeException("Unexpected mark " + mark + " in vote column " + (column + 1));
+                    }
+                    pairs[length++] = columnPairs[column];
+                }
+                column++;
+                i = end + 1;
+            }
+
+            EncodedBallot ballot = EncodedBallot.of(Arrays.copyOf(pairs, length));
+            boolean validAsCast = ballot.IsValid();
+            int changedSteps = 0;
+            List<InterpretationRule> rules = pipeline.getRules();
+            for (int step = 0; step < rules.size(); step++) {
+                EncodedBallot next = rules.get(step).apply(ballot);
+                if (!next.equals(ballot)) {
+                    changedSteps |= 1 << step;
+                }
+                ballot = next;
+            }
+            String rendered = "\"" + ballot.toString(candidates).replace("\"", "\"\"") + "\"\n";
+            return new Interpretation(rendered.getBytes(StandardCharsets.UTF_8), changedSteps, validAsCast,
+                    ballot.getLength() == 0);
+        }
+    }
+
+    // Split a line of CSV into its fields, allowing for quoted fields with commas and doubled quotes in them.
+    static List<String> splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
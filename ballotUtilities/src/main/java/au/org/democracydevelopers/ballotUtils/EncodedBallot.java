@@ -0,0 +1,210 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* The same thing as an IRVChoices - a possibly invalid set of (rank, candidate) pairs, sorted by rank - but with the
+ * candidates numbered by a CandidateDictionary and each pair packed into one int, (rank << CANDIDATE_BITS) | candidate.
+ * IsValid and the Rule 26.7 transforms work on the ints, using the bits of a long as the set of candidates (or
+ * ranks) seen so far, rather than hashing strings, and give exactly the same results as the IRVChoices versions.
+ * Pairs with the same rank stay in the order they were given, as in IRVChoices, so converting to and from IRVChoices
+ * loses nothing.
+ */
+public class EncodedBallot {
+
+    public static final int CANDIDATE_BITS = 6;
+    private static final int CANDIDATE_MASK = (1 << CANDIDATE_BITS) - 1;
+    // Ranks must be less than this to fit alongside the candidate in a (non-negative) int.
+    public static final int RANK_LIMIT = 1 << (31 - CANDIDATE_BITS);
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int[] pairs;
+
+    // A ballot of the given pairs, which are sorted (stably) by rank. The array is not copied.
+    private EncodedBallot(int[] pairs, boolean alreadySorted) {
+        if (!alreadySorted) {
+            sortByRank(pairs);
+        }
+        this.pairs = pairs;
+    }
+
+    public static int pack(int rank, int candidate) {
+        if (rank < 0 || rank >= RANK_LIMIT || candidate < 0 || candidate >= CandidateDictionary.MAX_CANDIDATES) {
+            throw new IllegalArgumentException("Can't encode rank " + rank + " for candidate " + candidate);
+        }
+        return (rank << CANDIDATE_BITS) | candidate;
+    }
+
+    // A ballot of the given packed pairs, in any order. The array is copied.
+    public static EncodedBallot of(int... packedPairs) {
+        return new EncodedBallot(packedPairs.clone(), false);
+    }
+
+    // A ballot of pairs that are already sorted by rank. The array is not copied.
+    static EncodedBallot ofSortedPairs(int[] pairs) {
+        return new EncodedBallot(pairs, true);
+    }
+
+    public static EncodedBallot fromIRVChoices(IRVChoices choices, CandidateDictionary candidates) {
+        List<Preference> preferences = choices.getChoices();
+        int[] pairs = new int[preferences.size()];
+        for (int i = 0; i < pairs.length; i++) {
+            Preference preference = preferences.get(i);
+            int candidate = candidates.indexOf(preference.getCandidateName());
+            if (candidate < 0) {
+                throw new IllegalArgumentException("Unknown candidate " + preference.getCandidateName());
+            }
+            pairs[i] = pack(preference.getRank(), candidate);
+        }
+        // IRVChoices are always sorted.
+        return new EncodedBallot(pairs, true);
+    }
+
+    // Ballot b of a parser that has had many ballots added to it, which must have been parsed successfully.
+    public static EncodedBallot fromParser(IRVChoicesParser parser, int b, CandidateDictionary candidates) {
+        if (parser.getStatus(b) != IRVChoicesParser.Status.OK) {
+            throw new IllegalArgumentException("Ballot " + b + " is malformed: " + parser.getStatus(b));
+        }
+        int[] pairs = new int[parser.getLength(b)];
+        for (int i = 0; i < pairs.length; i++) {
+            int candidate = candidates.indexOf(parser.getCandidateName(b, i));
+            if (candidate < 0) {
+                throw new IllegalArgumentException("Unknown candidate " + parser.getCandidateName(b, i));
+            }
+            pairs[i] = pack(parser.getRank(b, i), candidate);
+        }
+        return new EncodedBallot(pairs, false);
+    }
+
+    public IRVChoices toIRVChoices(CandidateDictionary candidates) {
+        List<Preference> preferences = new ArrayList<>(pairs.length);
+        for (int pair : pairs) {
+            preferences.add(new Preference(pair >>> CANDIDATE_BITS, candidates.getName(pair & CANDIDATE_MASK)));
+        }
+        return new IRVChoices(preferences);
+    }
+
+    public int getLength() {
+        return pairs.length;
+    }
+
+    public int getRank(int i) {
+        return pairs[i] >>> CANDIDATE_BITS;
+    }
+
+    public int getCandidate(int i) {
+        return pairs[i] & CANDIDATE_MASK;
+    }
+
+    // The i-th packed pair.
+    public int getPair(int i) {
+        return pairs[i];
+    }
+
+    // See IRVChoices.IsValid.
+    public boolean IsValid() {
+        // More pairs than there can be candidates means some candidate is repeated.
+        if (pairs.length > CandidateDictionary.MAX_CANDIDATES) {
+            return false;
+        }
+        long candidatesSeen = 0;
+        long ranksSeen = 0;
+        for (int pair : pairs) {
+            long candidate = 1L << (pair & CANDIDATE_MASK);
+            int rank = pair >>> CANDIDATE_BITS;
+            if ((candidatesSeen & candidate) != 0 || rank < 1 || rank > pairs.length
+                    || (ranksSeen & (1L << (rank - 1))) != 0) {
+                return false;
+            }
+            candidatesSeen |= candidate;
+            ranksSeen |= 1L << (rank - 1);
+        }
+        return true;
+    }
+
+    // See IRVChoices.ApplyRule1: remove everything from the first overvoted rank on.
+    public EncodedBallot ApplyRule1() {
+        for (int i = 0; i < pairs.length - 1; i++) {
+            if ((pairs[i] >>> CANDIDATE_BITS) == (pairs[i + 1] >>> CANDIDATE_BITS)) {
+                return truncate(i);
+            }
+        }
+        return this;
+    }
+
+    // See IRVChoices.ApplyRule2: remove everything after the first skipped rank, or everything if rank 1 is skipped.
+    public EncodedBallot ApplyRule2() {
+        if (pairs.length > 0 && (pairs[0] >>> CANDIDATE_BITS) != 1) {
+            return truncate(0);
+        }
+        for (int i = 0; i < pairs.length - 1; i++) {
+            if ((pairs[i + 1] >>> CANDIDATE_BITS) > (pairs[i] >>> CANDIDATE_BITS) + 1) {
+                return truncate(i + 1);
+            }
+        }
+        return this;
+    }
+
+    // See IRVChoices.ApplyRule3: keep only the first (highest-ranked) mention of each candidate.
+    public EncodedBallot ApplyRule3() {
+        long candidatesSeen = 0;
+        int[] kept = null;
+        int length = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            long candidate = 1L << (pairs[i] & CANDIDATE_MASK);
+            if ((candidatesSeen & candidate) == 0) {
+                candidatesSeen |= candidate;
+                if (kept != null) {
+                    kept[length] = pairs[i];
+                }
+                length++;
+            } else if (kept == null) {
+                // The first repeat: from here on, copy the pairs we keep.
+                kept = Arrays.copyOf(pairs, pairs.length - 1);
+            }
+        }
+        return kept == null ? this : new EncodedBallot(Arrays.copyOf(kept, length), true);
+    }
+
+    private EncodedBallot truncate(int length) {
+        return new EncodedBallot(length == 0 ? EMPTY : Arrays.copyOf(pairs, length), true);
+    }
+
+    // The same as toIRVChoices(candidates).toString().
+    public String toString(CandidateDictionary candidates) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < pairs.length; i++) {
+            if (i > 0) {
+                s.append(',');
+            }
+            s.append(candidates.getName(getCandidate(i))).append('(').append(getRank(i)).append(')');
+        }
+        return s.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof EncodedBallot ballot && Arrays.equals(pairs, ballot.pairs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(pairs);
+    }
+
+    // Stable insertion sort on the rank alone, like List.sort(Preference::compareTo). Ballots are short.
+    private static void sortByRank(int[] pairs) {
+        for (int i = 1; i < pairs.length; i++) {
+            int pair = pairs[i];
+            int rank = pair >>> CANDIDATE_BITS;
+            int j = i - 1;
+            while (j >= 0 && (pairs[j] >>> CANDIDATE_BITS) > rank) {
+                pairs[j + 1] = pairs[j];
+                j--;
+            }
+            pairs[j + 1] = pair;
+        }
+    }
+}
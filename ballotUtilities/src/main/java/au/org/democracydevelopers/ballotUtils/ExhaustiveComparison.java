@@ -0,0 +1,302 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
+
+/* Applies two interpretation functions to every ballot of n candidates and n ranks - every one of the 2^(n*n)
+ * BallotPads - and counts the ballots they interpret differently, keeping the first few as examples.
+ * As in ExhaustiveValidityChecker, ballots that differ only by renaming the candidates are only compared once
+ * (unless symmetryReduced is false), and each one compared is counted as all the pads it stands for.
+ * Any range of pads [from, to) can be compared on its own, so a long run (n=6 through IRVChoices, or n=7) can be
+ * split into separate jobs, or stopped and picked up again. The range is cut into chunks of consecutive pads,
+ * which are compared in parallel and finished in order; after each chunk, the progress callback gets the results
+ * for [from, getDoneTo()), so a run that stops can be resumed from the last getDoneTo() it reported.
+ * Interpretations that can't be given as pads (which no function that only removes preferences makes) all count
+ * as the same.
+ * mvn compile exec:java -Dexec.mainClass="au.org.democracydevelopers.ballotUtils.ExhaustiveComparison" -Dexec.args="numCandidates [--first=3,1,2] [--second=1,3,2] [--from=pad] [--to=pad] [--samples=20] [--all-pads]"
+ */
+public class ExhaustiveComparison {
+
+    private static final long PROGRESS_INTERVAL_NANOS = 10_000_000_000L;
+
+    public static void main(String[] args) {
+        List<String> positional = new ArrayList<>();
+        RulePipeline first = RulePipeline.DUPLICATES_BEFORE_OVERVOTES;
+        RulePipeline second = RulePipeline.OVERVOTES_BEFORE_DUPLICATES;
+        Long from = null;
+        Long to = null;
+        int samples = 20;
+        boolean symmetryReduced = true;
+        for (String arg : args) {
+            if (arg.startsWith("--first=")) {
+                first = RulePipeline.parse(arg.substring("--first=".length()));
+            } else if (arg.startsWith("--second=")) {
+                second = RulePipeline.parse(arg.substring("--second=".length()));
+            } else if (arg.startsWith("--from=")) {
+                from = Long.parseLong(arg.substring("--from=".length()));
+            } else if (arg.startsWith("--to=")) {
+                to = Long.parseLong(arg.substring("--to=".length()));
+            } else if (arg.startsWith("--samples=")) {
+                samples = Integer.parseInt(arg.substring("--samples=".length()));
+            } else if (arg.equals("--all-pads")) {
+                symmetryReduced = false;
+            } else {
+                positional.add(arg);
+            }
+        }
+        if (positional.size() != 1) {
+            System.err.println("Usage: mvn compile exec:java -Dexec.mainClass=\"au.org.democracydevelopers.ballotUtils.ExhaustiveComparison\" -Dexec.args=\"numCandidates [--first=3,1,2] [--second=1,3,2] [--from=pad] [--to=pad] [--samples=20] [--all-pads]\"");
+            System.exit(1);
+        }
+
+        ExhaustiveComparison comparison = new ExhaustiveComparison(Integer.parseInt(positional.get(0)),
+                symmetryReduced, samples, ForkJoinPool.commonPool());
+        BallotPads pads = comparison.getPads();
+        System.out.println("Comparing " + first + " with " + second);
+        long start = System.nanoTime();
+        long[] lastReport = {start};
+        Result result = comparison.compare(first, second, from == null ? 0 : from, to == null ? pads.size() : to,
+                progress -> {
+                    long now = System.nanoTime();
+                    if (now - lastReport[0] >= PROGRESS_INTERVAL_NANOS) {
+                        lastReport[0] = now;
+                        System.out.printf("%.0f s: %s (resume with --from=%d)\n", (now - start) / 1e9, progress,
+                                progress.getDoneTo());
+                    }
+                });
+        System.out.printf("%.1f s: %s\n", (System.nanoTime() - start) / 1e9, result);
+        for (long pad : result.getSamples()) {
+            System.out.println(pads.toString(pad) + " is interpreted as "
+                    + pads.toString(pads.interpreter(first).applyAsLong(pad)) + " by " + first + ", but "
+                    + pads.toString(pads.interpreter(second).applyAsLong(pad)) + " by " + second);
+        }
+    }
+
+    private final BallotPads pads;
+    private final boolean symmetryReduced;
+    private final int maxSamples;
+    private final ForkJoinPool pool;
+    // Pads are compared in chunks of 2^chunkBits.
+    private final int chunkBits;
+    private final long factorial;
+
+    public ExhaustiveComparison(int numCandidates) {
+        this(numCandidates, true, 20, ForkJoinPool.commonPool());
+    }
+
+    public ExhaustiveComparison(int numCandidates, boolean symmetryReduced, int maxSamples, ForkJoinPool pool) {
+        this.pads = new BallotPads(numCandidates);
+        this.symmetryReduced = symmetryReduced;
+        this.maxSamples = maxSamples;
+        this.pool = pool;
+        // Small n in one chunk; otherwise a chunk for each choice of the last two candidates' rows.
+        int n = numCandidates;
+        this.chunkBits = n * n <= 20 ? n * n : n * (n - 2);
+        long factorial = 1;
+        for (int i = 2; i <= n; i++) {
+            factorial *= i;
+        }
+        this.factorial = factorial;
+    }
+
+    public BallotPads getPads() {
+        return pads;
+    }
+
+    public Result compare(RulePipeline first, RulePipeline second) {
+        return compare(pads.interpreter(first), pads.interpreter(second), 0, pads.size(), progress -> {
+        });
+    }
+
+    public Result compare(RulePipeline first, RulePipeline second, long from, long to, Consumer<Result> progress) {
+        return compare(pads.interpreter(first), pads.interpreter(second), from, to, progress);
+    }
+
+    public Result compare(Function<IRVChoices, IRVChoices> first, Function<IRVChoices, IRVChoices> second) {
+        return compare(pads.adapt(first), pads.adapt(second), 0, pads.size(), progress -> {
+        });
+    }
+
+    // Compare the two functions on the pads from (inclusive) to to (exclusive).
+    public Result compare(LongUnaryOperator first, LongUnaryOperator second, long from, long to,
+                          Consumer<Result> progress) {
+        if (from < 0 || to > pads.size() || from > to) {
+            throw new IllegalArgumentException("Pads run from 0 to " + pads.size() + ", not " + from + " to " + to);
+        }
+        // Cancelling a ForkJoin task doesn't interrupt it, so chunks that are already running poll this instead.
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Future<Result>> chunks = new ArrayList<>();
+        for (long chunkStart = from >>> chunkBits << chunkBits; chunkStart < to; chunkStart += 1L << chunkBits) {
+            long start = Math.max(from, chunkStart);
+            long end = Math.min(to, chunkStart + (1L << chunkBits));
+            chunks.add(pool.submit(() -> new Chunk(first, second, start, end, stop).run()));
+        }
+
+        Result total = new Result(from, from, 0, 0, 0, 0, List.of());
+        try {
+            for (Future<Result> chunk : chunks) {
+                total = total.then(chunk.get(), maxSamples);
+                progress.accept(total);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted after comparing up to pad " + total.getDoneTo(), e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Comparison failed after pad " + total.getDoneTo(), e.getCause());
+        } finally {
+            // Anything still going is no longer wanted.
+            stop.set(true);
+            chunks.forEach(chunk -> chunk.cancel(false));
+        }
+        return total;
+    }
+
+    // What has been found in the pads from getFrom() (inclusive) to getDoneTo() (exclusive).
+    public static class Result {
+        private final long from;
+        private final long doneTo;
+        private final long ballotsCompared;
+        private final long padsCovered;
+        private final long disagreements;
+        private final long padsDisagreeing;
+        private final List<Long> samples;
+
+        private Result(long from, long doneTo, long ballotsCompared, long padsCovered, long disagreements,
+                       long padsDisagreeing, List<Long> samples) {
+            this.from = from;
+            this.doneTo = doneTo;
+            this.ballotsCompared = ballotsCompared;
+            this.padsCovered = padsCovered;
+            this.disagreements = disagreements;
+            this.padsDisagreeing = padsDisagreeing;
+            this.samples = Collections.unmodifiableList(samples);
+        }
+
+        // This followed by the next range.
+        private Result then(Result next, int maxSamples) {
+            List<Long> samples = new ArrayList<>(this.samples);
+            for (int i = 0; i < next.samples.size() && samples.size() < maxSamples; i++) {
+                samples.add(next.samples.get(i));
+            }
+            return new Result(from, next.doneTo, ballotsCompared + next.ballotsCompared,
+                    padsCovered + next.padsCovered, disagreements + next.disagreements,
+                    padsDisagreeing + next.padsDisagreeing, samples);
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getDoneTo() {
+            return doneTo;
+        }
+
+        // The number of ballots the functions were applied to.
+        public long getBallotsCompared() {
+            return ballotsCompared;
+        }
+
+        // The number of pads those ballots stand for, counting all the renamings of each (some of which may be
+        // outside the range). Over all the ranges that make up [0, 2^(n*n)), it adds up to 2^(n*n).
+        public long getPadsCovered() {
+            return padsCovered;
+        }
+
+        // The number of ballots compared that the functions interpret differently.
+        public long getDisagreements() {
+            return disagreements;
+        }
+
+        // The number of pads the disagreements stand for.
+        public long getPadsDisagreeing() {
+            return padsDisagreeing;
+        }
+
+        // The first (lowest) pads that the functions interpret differently, up to the maximum number of samples.
+        public List<Long> getSamples() {
+            return samples;
+        }
+
+        public String toString() {
+            return String.format("pads %d to %d: %d ballots compared (%d pads), %d disagree (%d pads)", from,
+                    doneTo, ballotsCompared, padsCovered, disagreements, padsDisagreeing);
+        }
+    }
+
+    /* The pads in [start, end), in order. The rows are chosen from the last candidate's (the highest bits) down,
+     * so that they come out in order, skipping any range of pads outside [start, end). With symmetry reduction,
+     * each row is at least the one after it, and each pad stands for n!/(m1! m2! ...) pads, as in
+     * ExhaustiveValidityChecker.
+     */
+    private final class Chunk {
+        private final LongUnaryOperator first;
+        private final LongUnaryOperator second;
+        private final long start;
+        private final long end;
+        private final AtomicBoolean stop;
+        private long ballotsCompared;
+        private long padsCovered;
+        private long disagreements;
+        private long padsDisagreeing;
+        private final List<Long> samples = new ArrayList<>();
+
+        Chunk(LongUnaryOperator first, LongUnaryOperator second, long start, long end, AtomicBoolean stop) {
+            this.first = first;
+            this.second = second;
+            this.start = start;
+            this.end = end;
+            this.stop = stop;
+        }
+
+        Result run() {
+            int n = pads.getNumCandidates();
+            search(n - 1, 0L, 0L, 0, 1);
+            return new Result(start, end, ballotsCompared, padsCovered, disagreements, padsDisagreeing, samples);
+        }
+
+        private void search(int candidate, long pad, long minRow, int run, long divisor) {
+            int n = pads.getNumCandidates();
+            if (candidate < 0) {
+                long weight = symmetryReduced ? factorial / divisor : 1;
+                ballotsCompared++;
+                padsCovered += weight;
+                if (first.applyAsLong(pad) != second.applyAsLong(pad)) {
+                    disagreements++;
+                    padsDisagreeing += weight;
+                    if (samples.size() < maxSamples) {
+                        samples.add(pad);
+                    }
+                }
+                return;
+            }
+            // The results of a stopped comparison are thrown away, so it doesn't matter what this one has counted.
+            if (stop.get()) {
+                return;
+            }
+            int shift = n * candidate;
+            for (long row = symmetryReduced ? minRow : 0; row < 1L << n; row++) {
+                long lowest = pad | row << shift;
+                if (lowest >= end) {
+                    break;
+                }
+                if (lowest + (1L << shift) <= start) {
+                    continue;
+                }
+                if (symmetryReduced) {
+                    int nextRun = candidate < n - 1 && row == minRow ? run + 1 : 1;
+                    search(candidate - 1, lowest, row, nextRun, divisor * nextRun);
+                } else {
+                    search(candidate - 1, lowest, 0, 0, 1);
+                }
+            }
+        }
+    }
+}
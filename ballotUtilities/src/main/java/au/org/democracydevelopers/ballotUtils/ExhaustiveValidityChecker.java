@@ -0,0 +1,221 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
+
+/* Checks that an interpretation function gives a valid ballot for every possible ballot of n candidates and n
+ * ranks - every one of the 2^(n*n) BallotPads.
+ * Validity doesn't depend on the candidates' names, and nor does the interpretation of a RulePipeline: renaming
+ * the candidates of a ballot just renames them in its interpretation. So for a pipeline, only one ballot of each
+ * set that are the same up to renaming needs to be checked. Those are the pads whose rows (candidates) are in
+ * decreasing order, which cuts the work by nearly n!. Any other function might treat candidates differently, and
+ * a ballot it got wrong could be skipped, so by default it goes through every pad; give symmetryReduced = true
+ * only for a function known not to.
+ * The pads are split up by their first rows into ForkJoin tasks. Within a task, nothing is allocated, so a
+ * RulePipeline (through BallotPads.interpreter) checks 6 candidates in seconds. Any other function can be checked
+ * through BallotPads.adapt, but it makes objects for every ballot, so it is much slower.
+ * Checking stops at the first invalid interpretation found.
+ */
+public class ExhaustiveValidityChecker {
+
+    // Rows are chosen in parallel down to this depth, and the rest of each subtree in a single task.
+    private static final int FORK_DEPTH = 2;
+
+    private final BallotPads pads;
+    // Whether to check only one ballot of each renaming: for RulePipelines, and for any other function.
+    private final boolean pipelinesReduced;
+    private final boolean functionsReduced;
+    private final ForkJoinPool pool;
+
+    // RulePipelines are checked with symmetry reduction, and any other function without.
+    public ExhaustiveValidityChecker(int numCandidates) {
+        this(numCandidates, true, false, ForkJoinPool.commonPool());
+    }
+
+    // Everything is checked with symmetry reduction or without, as given.
+    public ExhaustiveValidityChecker(int numCandidates, boolean symmetryReduced, ForkJoinPool pool) {
+        this(numCandidates, symmetryReduced, symmetryReduced, pool);
+    }
+
+    private ExhaustiveValidityChecker(int numCandidates, boolean pipelinesReduced, boolean functionsReduced,
+                                      ForkJoinPool pool) {
+        this.pads = new BallotPads(numCandidates);
+        this.pipelinesReduced = pipelinesReduced;
+        this.functionsReduced = functionsReduced;
+        this.pool = pool;
+    }
+
+    public BallotPads getPads() {
+        return pads;
+    }
+
+    public Result check(RulePipeline pipeline) {
+        return check(pads.interpreter(pipeline), pipelinesReduced);
+    }
+
+    public Result check(Function<IRVChoices, IRVChoices> interpretation) {
+        return check(pads.adapt(interpretation), functionsReduced);
+    }
+
+    // Check an interpretation function that works on pads directly. Like any function, this is only checked with
+    // symmetry reduction if it was asked for.
+    public Result checkPads(LongUnaryOperator interpretation) {
+        return check(interpretation, functionsReduced);
+    }
+
+    private Result check(LongUnaryOperator interpretation, boolean symmetryReduced) {
+        Search search = new Search(interpretation, symmetryReduced);
+        pool.invoke(search.new Subtree(0, 0L, (1L << pads.getNumCandidates()) - 1, 0, 1));
+        return new Result(pads, search.checked.get(), search.covered.get(), search.counterexample.get(),
+                search.interpretationOfCounterexample);
+    }
+
+    public static class Result {
+        private final BallotPads pads;
+        private final long ballotsChecked;
+        private final long padsCovered;
+        private final long counterexample;
+        private final long interpretation;
+
+        private Result(BallotPads pads, long ballotsChecked, long padsCovered, long counterexample, long interpretation) {
+            this.pads = pads;
+            this.ballotsChecked = ballotsChecked;
+            this.padsCovered = padsCovered;
+            this.counterexample = counterexample;
+            this.interpretation = interpretation;
+        }
+
+        // True if every interpretation was valid.
+        public boolean isValid() {
+            return counterexample < 0;
+        }
+
+        // The number of ballots the function was applied to.
+        public long getBallotsChecked() {
+            return ballotsChecked;
+        }
+
+        // The number of pads those ballots stand for, counting all the renamings of each. 2^(n*n) if nothing
+        // invalid was found.
+        public long getPadsCovered() {
+            return padsCovered;
+        }
+
+        // A ballot whose interpretation is invalid, or null if there isn't one.
+        public IRVChoices getCounterexample() {
+            return isValid() ? null : pads.toIRVChoices(counterexample);
+        }
+
+        public String toString() {
+            String s = String.format("%d candidates: %d ballots checked, covering %d of %d", pads.getNumCandidates(),
+                    ballotsChecked, padsCovered, pads.size());
+            return isValid() ? s + ": all valid" : s + ": " + pads.toString(counterexample) + " is interpreted as "
+                    + pads.toString(interpretation) + ", which is invalid";
+        }
+    }
+
+    // The shared state of one check.
+    private final class Search {
+        private final LongUnaryOperator interpretation;
+        private final boolean symmetryReduced;
+        private final long factorial;
+        private final AtomicLong checked = new AtomicLong();
+        private final AtomicLong covered = new AtomicLong();
+        // The first invalid ballot found, or -1.
+        private final AtomicLong counterexample = new AtomicLong(-1);
+        private volatile long interpretationOfCounterexample;
+
+        Search(LongUnaryOperator interpretation, boolean symmetryReduced) {
+            this.interpretation = interpretation;
+            this.symmetryReduced = symmetryReduced;
+            long factorial = 1;
+            for (int i = 2; i <= pads.getNumCandidates(); i++) {
+                factorial *= i;
+            }
+            this.factorial = factorial;
+        }
+
+        /* All the pads that start with the given rows. The next row can be anything up to maxRow: with symmetry
+         * reduction, that is the row before, so that rows never go up. Each pad then stands for all the orders
+         * of its rows, n!/(m1! m2! ...) where the m's are the numbers of equal rows: run is how many rows at the
+         * end are equal, and divisor is the product of the factorials so far.
+         */
+        @SuppressWarnings("serial")
+        private final class Subtree extends RecursiveAction {
+            private final int depth;
+            private final long pad;
+            private final long maxRow;
+            private final int run;
+            private final long divisor;
+            private long localChecked;
+            private long localCovered;
+
+            Subtree(int depth, long pad, long maxRow, int run, long divisor) {
+                this.depth = depth;
+                this.pad = pad;
+                this.maxRow = maxRow;
+                this.run = run;
+                this.divisor = divisor;
+            }
+
+            @Override
+            protected void compute() {
+                int n = pads.getNumCandidates();
+                if (depth < FORK_DEPTH && n - depth > 3) {
+                    List<Subtree> children = new ArrayList<>();
+                    for (long row = 0; row <= maxRow; row++) {
+                        children.add(child(row));
+                    }
+                    ForkJoinTask.invokeAll(children);
+                } else {
+                    search(depth, pad, maxRow, run, divisor);
+                    checked.addAndGet(localChecked);
+                    covered.addAndGet(localCovered);
+                }
+            }
+
+            private Subtree child(long row) {
+                int n = pads.getNumCandidates();
+                long nextPad = pad | row << (n * depth);
+                if (!symmetryReduced) {
+                    return new Subtree(depth + 1, nextPad, maxRow, 0, 1);
+                }
+                int nextRun = depth > 0 && row == maxRow ? run + 1 : 1;
+                return new Subtree(depth + 1, nextPad, row, nextRun, divisor * nextRun);
+            }
+
+            private void search(int depth, long pad, long maxRow, int run, long divisor) {
+                int n = pads.getNumCandidates();
+                if (depth == n) {
+                    long interpreted = interpretation.applyAsLong(pad);
+                    if (!pads.IsValid(interpreted)) {
+                        if (counterexample.compareAndSet(-1, pad)) {
+                            interpretationOfCounterexample = interpreted;
+                        }
+                    }
+                    localChecked++;
+                    localCovered += symmetryReduced ? factorial / divisor : 1;
+                    return;
+                }
+                if (counterexample.get() >= 0) {
+                    return;
+                }
+                for (long row = 0; row <= maxRow; row++) {
+                    long nextPad = pad | row << (n * depth);
+                    if (symmetryReduced) {
+                        int nextRun = depth > 0 && row == maxRow ? run + 1 : 1;
+                        search(depth + 1, nextPad, row, nextRun, divisor * nextRun);
+                    } else {
+                        search(depth + 1, nextPad, maxRow, 0, 1);
+                    }
+                }
+            }
+        }
+    }
+}
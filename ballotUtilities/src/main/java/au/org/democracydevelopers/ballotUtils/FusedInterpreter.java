@@ -0,0 +1,174 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* A RulePipeline compiled into a single pass over each ballot's (sorted) preferences.
+ * Each of the rules can be applied to a stream of preferences, in rank order, without seeing the whole ballot:
+ * - OVERVOTES holds back one preference, and passes it on once the next one has a different rank. If they have the
+ *   same rank, it stops, so that preference and everything after it are dropped.
+ * - SKIPPED_RANKS passes preferences on until the first one isn't rank 1, or a rank is more than one after the
+ *   rank before it, and then stops.
+ * - DUPLICATES passes on each candidate's first preference, remembering the candidates it has seen in a bitset.
+ * So the pipeline becomes a chain of these stages, and each preference is pushed through the chain as it is read.
+ * What comes out of the end is exactly what applying the rules one at a time would give, but without building a
+ * ballot for every rule. Once a stage has stopped, nothing more can get past it, so the rest of the ballot isn't
+ * read at all.
+ * Instances have no mutable state, so one can be shared between threads.
+ */
+public class FusedInterpreter {
+
+    private static final int CANDIDATE_MASK = (1 << EncodedBallot.CANDIDATE_BITS) - 1;
+
+    private final RulePipeline pipeline;
+    private final InterpretationRule[] program;
+
+    FusedInterpreter(RulePipeline pipeline) {
+        if (pipeline.getRules().size() > Integer.SIZE) {
+            throw new IllegalArgumentException("A pipeline can have at most " + Integer.SIZE + " rules");
+        }
+        this.pipeline = pipeline;
+        this.program = pipeline.getRules().toArray(new InterpretationRule[0]);
+    }
+
+    public RulePipeline getPipeline() {
+        return pipeline;
+    }
+
+    public IRVChoices InterpretValidIntent(IRVChoices b) {
+        // Number the candidates in the order they first appear in this ballot, to use the same stages as for
+        // encoded ballots.
+        List<Preference> preferences = b.getChoices();
+        int[] pairs = new int[preferences.size()];
+        String[] names = new String[Math.min(pairs.length, CandidateDictionary.MAX_CANDIDATES)];
+        int distinctNames = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            Preference preference = preferences.get(i);
+            int candidate = 0;
+            while (candidate < distinctNames && !names[candidate].equals(preference.getCandidateName())) {
+                candidate++;
+            }
+            if (candidate == distinctNames) {
+                if (distinctNames == CandidateDictionary.MAX_CANDIDATES) {
+                    // Too many candidates to number: do it the slow way.
+                    return pipeline.apply(b);
+                }
+                names[distinctNames++] = preference.getCandidateName();
+            }
+            if (preference.getRank() < 0 || preference.getRank() >= EncodedBallot.RANK_LIMIT) {
+                return pipeline.apply(b);
+            }
+            pairs[i] = EncodedBallot.pack(preference.getRank(), candidate);
+        }
+
+        int[] kept = new int[pairs.length];
+        int keptCount = run(pairs, kept);
+        if (keptCount == pairs.length) {
+            return b;
+        }
+        List<Preference> interpretation = new ArrayList<>(keptCount);
+        for (int i = 0; i < keptCount; i++) {
+            interpretation.add(preferences.get(kept[i]));
+        }
+        return new IRVChoices(interpretation);
+    }
+
+    public EncodedBallot InterpretValidIntent(EncodedBallot b) {
+        int[] pairs = new int[b.getLength()];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = b.getPair(i);
+        }
+        int[] kept = new int[pairs.length];
+        int keptCount = run(pairs, kept);
+        if (keptCount == pairs.length) {
+            return b;
+        }
+        int[] interpretation = new int[keptCount];
+        for (int i = 0; i < keptCount; i++) {
+            interpretation[i] = pairs[kept[i]];
+        }
+        return EncodedBallot.ofSortedPairs(interpretation);
+    }
+
+    /* Push each of the (sorted) pairs through the stages in turn, writing the indices of the ones that come out of
+     * the end to kept.
+     * @return the number of indices written to kept.
+     */
+    private int run(int[] pairs, int[] kept) {
+        Run run = new Run(pairs, kept);
+        for (int i = 0; i < pairs.length && run.stopped == 0; i++) {
+            run.push(0, i);
+        }
+        // Let the held-back preferences through, stage by stage.
+        for (int s = 0; s < program.length; s++) {
+            if (program[s] == InterpretationRule.OVERVOTES && run.memory[s] >= 0) {
+                int held = run.memory[s];
+                run.memory[s] = -1;
+                run.push(s + 1, held);
+            }
+        }
+        return run.keptCount;
+    }
+
+    // The state of the stages while interpreting one ballot.
+    private final class Run {
+        private final int[] pairs;
+        private final int[] kept;
+        private int keptCount = 0;
+        // Bit s is set once stage s has stopped passing anything on.
+        private int stopped = 0;
+        // OVERVOTES: the index of the held-back preference. SKIPPED_RANKS: the last rank passed on. -1 to start with.
+        private final int[] memory = new int[program.length];
+        // DUPLICATES: the candidates seen so far.
+        private final long[] seen = new long[program.length];
+
+        Run(int[] pairs, int[] kept) {
+            this.pairs = pairs;
+            this.kept = kept;
+            Arrays.fill(memory, -1);
+        }
+
+        // Push the preference with the given index into stage s (and on from there, as far as it gets).
+        void push(int s, int index) {
+            for (; s < program.length; s++) {
+                if ((stopped & (1 << s)) != 0) {
+                    return;
+                }
+                int pair = pairs[index];
+                int rank = pair >>> EncodedBallot.CANDIDATE_BITS;
+                switch (program[s]) {
+                    case OVERVOTES -> {
+                        int held = memory[s];
+                        memory[s] = index;
+                        if (held < 0) {
+                            return;
+                        }
+                        if ((pairs[held] >>> EncodedBallot.CANDIDATE_BITS) == rank) {
+                            stopped |= 1 << s;
+                            memory[s] = -1;
+                            return;
+                        }
+                        // The held-back preference goes on instead of this one.
+                        index = held;
+                    }
+                    case SKIPPED_RANKS -> {
+                        if (memory[s] < 0 ? rank != 1 : rank > memory[s] + 1) {
+                            stopped |= 1 << s;
+                            return;
+                        }
+                        memory[s] = rank;
+                    }
+                    case DUPLICATES -> {
+                        long candidate = 1L << (pair & CANDIDATE_MASK);
+                        if ((seen[s] & candidate) != 0) {
+                            return;
+                        }
+                        seen[s] |= candidate;
+                    }
+                }
+            }
+            kept[keptCount++] = index;
+        }
+    }
+}
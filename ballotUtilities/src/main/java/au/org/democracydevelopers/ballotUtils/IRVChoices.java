@@ -1,7 +1,5 @@
 package au.org.democracydevelopers.ballotUtils;
 
-import org.apache.commons.lang3.StringUtils;
-
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -15,6 +13,11 @@ public class IRVChoices {
         return choices.size();
     }
 
+    // The preferences, sorted by rank. Preferences with the same rank are in the order they were given.
+    public List<Preference> getChoices() {
+        return choices;
+    }
+
     public IRVChoices(List<Preference> mutableChoices) {
         mutableChoices.sort(Preference::compareTo);
         choices = Collections.unmodifiableList(mutableChoices);
@@ -22,21 +25,14 @@ public class IRVChoices {
 
 
     // Build a new ballot from the string of CandidateName(rank) strings in the colorado-rla database.
+    // Use IRVChoicesParser directly to find out what's wrong with a malformed string, or to parse many at once.
     public IRVChoices(String sanitizedChoices) {
         ArrayList<Preference> mutableChoices = new ArrayList<>();
 
-        String[] preferences = sanitizedChoices.trim().split(",");
-        if (preferences.length == 0) {
-            return;
-        }
-        for (String preference : preferences) {
-            String[] vote = preference.split("\\(");
-            String rank = vote[1].split("\\)")[0];
-            if (!StringUtils.isNumeric(rank)) {
-                throw new RuntimeException("Couldn't parse ballot");
-                //Invalid rank. Ballot is not usable. IF ballot is invalid, this safeguards us against number format exception
-            }
-            mutableChoices.add(new Preference(Integer.parseInt(rank), vote[0].trim()));
+        IRVChoicesParser.Status status = IRVChoicesParser.parse(sanitizedChoices, mutableChoices);
+        if (status != IRVChoicesParser.Status.OK) {
+            // Ballot is not usable.
+            throw new RuntimeException("Couldn't parse ballot: " + status);
         }
 
         mutableChoices.sort(Preference::compareTo);
@@ -0,0 +1,223 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/* Parses the CandidateName(rank),CandidateName(rank),... strings in the colorado-rla database in a single pass
+ * over the characters, without regexes or intermediate arrays, and reports malformed input as a Status rather
+ * than by throwing.
+ * The static parse() fills in a list of Preferences for a single ballot. An instance is a reusable structure for
+ * parsing many ballots: the ranks and names of all the ballots added since the last clear() are stored end to
+ * end in flat arrays, and each distinct candidate name is only made into a String once.
+ * Whitespace around names and around each preference is ignored, as is a completely blank string (which is a
+ * ballot with no preferences). Anything else that isn't name(digits) is malformed.
+ */
+public class IRVChoicesParser {
+
+    public enum Status {
+        OK,
+        // A preference (e.g. between two commas, or after a trailing comma) is empty.
+        EMPTY_PREFERENCE,
+        // A preference has no '('.
+        MISSING_OPEN_BRACKET,
+        // The rank is empty, contains something other than the digits 0-9, or is too big for an int.
+        BAD_RANK,
+        // The string ends before the ')'.
+        MISSING_CLOSE_BRACKET,
+        // There is something other than whitespace between the ')' and the next ',' or the end.
+        UNEXPECTED_CHARACTER
+    }
+
+    // Receives each preference as it is parsed: the name is choices.substring(nameStart, nameEnd).
+    @FunctionalInterface
+    private interface PreferenceSink {
+        void accept(String choices, int nameStart, int nameEnd, int rank);
+    }
+
+    /* Parse a single ballot, adding its preferences, in the order they appear, to preferences.
+     * If the string is malformed, preferences is left as it was.
+     */
+    public static Status parse(String choices, List<Preference> preferences) {
+        int size = preferences.size();
+        Status status = scan(choices, (s, nameStart, nameEnd, rank) ->
+                preferences.add(new Preference(rank, s.substring(nameStart, nameEnd))));
+        if (status != Status.OK) {
+            preferences.subList(size, preferences.size()).clear();
+        }
+        return status;
+    }
+
+    private static Status scan(String choices, PreferenceSink sink) {
+        final int length = choices.length();
+        int i = skipWhitespace(choices, 0);
+        if (i == length) {
+            return Status.OK;
+        }
+
+        while (true) {
+            // The name: everything up to the '(', without surrounding whitespace.
+            int nameStart = i;
+            char c = 0;
+            while (i < length && (c = choices.charAt(i)) != '(' && c != ',') {
+                i++;
+            }
+            if (i == length || c == ',') {
+                return i == nameStart ? Status.EMPTY_PREFERENCE : Status.MISSING_OPEN_BRACKET;
+            }
+            int nameEnd = i;
+            while (nameEnd > nameStart && choices.charAt(nameEnd - 1) <= ' ') {
+                nameEnd--;
+            }
+            i++;
+
+            // The rank: one or more digits, then ')'.
+            int rankStart = i;
+            int rank = 0;
+            while (i < length && (c = choices.charAt(i)) >= '0' && c <= '9') {
+                if (rank > (Integer.MAX_VALUE - (c - '0')) / 10) {
+                    return Status.BAD_RANK;
+                }
+                rank = rank * 10 + (c - '0');
+                i++;
+            }
+            if (i == length) {
+                return i == rankStart ? Status.BAD_RANK : Status.MISSING_CLOSE_BRACKET;
+            }
+            if (c != ')' || i == rankStart) {
+                return Status.BAD_RANK;
+            }
+            sink.accept(choices, nameStart, nameEnd, rank);
+
+            // Then either the end or a comma and the next preference.
+            i = skipWhitespace(choices, i + 1);
+            if (i == length) {
+                return Status.OK;
+            }
+            if (choices.charAt(i) != ',') {
+                return Status.UNEXPECTED_CHARACTER;
+            }
+            i = skipWhitespace(choices, i + 1);
+        }
+    }
+
+    // Whitespace as String.trim() sees it.
+    private static int skipWhitespace(String s, int i) {
+        while (i < s.length() && s.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    // Ballot b is ranks[ballotStarts[b]] .. ranks[ballotStarts[b+1]-1], and the same in names.
+    private int[] ranks = new int[64];
+    private String[] names = new String[64];
+    private int[] ballotStarts = new int[17];
+    private Status[] statuses = new Status[16];
+    private int size = 0;
+    private int preferenceCount = 0;
+
+    // Open-addressed set of the distinct names seen so far, so each is only made into a String once.
+    private String[] nameSlots = new String[32];
+    private int nameCount = 0;
+
+    /* Parse one more ballot into this structure.
+     * Malformed ballots are still added, with their status and no preferences, so that ballot numbers line up
+     * with the input.
+     */
+    public Status add(String choices) {
+        if (size + 1 == statuses.length) {
+            statuses = Arrays.copyOf(statuses, 2 * statuses.length);
+            ballotStarts = Arrays.copyOf(ballotStarts, 2 * ballotStarts.length);
+        }
+        Status status = scan(choices, this::append);
+        if (status != Status.OK) {
+            preferenceCount = ballotStarts[size];
+        }
+        statuses[size] = status;
+        ballotStarts[++size] = preferenceCount;
+        return status;
+    }
+
+    // Forget all the ballots, keeping the arrays (and the names) for the next lot.
+    public void clear() {
+        size = 0;
+        preferenceCount = 0;
+    }
+
+    // The number of ballots added since the last clear().
+    public int size() {
+        return size;
+    }
+
+    public Status getStatus(int b) {
+        return statuses[b];
+    }
+
+    // The number of preferences in ballot b, in the order they appear in its string.
+    public int getLength(int b) {
+        return ballotStarts[b + 1] - ballotStarts[b];
+    }
+
+    public int getRank(int b, int i) {
+        return ranks[ballotStarts[b] + i];
+    }
+
+    public String getCandidateName(int b, int i) {
+        return names[ballotStarts[b] + i];
+    }
+
+    // Ballot b as an IRVChoices, or null if it was malformed.
+    public IRVChoices getIRVChoices(int b) {
+        if (statuses[b] != Status.OK) {
+            return null;
+        }
+        Preference[] preferences = new Preference[getLength(b)];
+        for (int i = 0; i < preferences.length; i++) {
+            preferences[i] = new Preference(getRank(b, i), getCandidateName(b, i));
+        }
+        return new IRVChoices(Arrays.asList(preferences));
+    }
+
+    private void append(String choices, int nameStart, int nameEnd, int rank) {
+        if (preferenceCount == ranks.length) {
+            ranks = Arrays.copyOf(ranks, 2 * ranks.length);
+            names = Arrays.copyOf(names, 2 * names.length);
+        }
+        ranks[preferenceCount] = rank;
+        names[preferenceCount] = intern(choices, nameStart, nameEnd);
+        preferenceCount++;
+    }
+
+    // The String for choices[nameStart, nameEnd), from nameSlots if it has been seen before.
+    private String intern(String choices, int nameStart, int nameEnd) {
+        int length = nameEnd - nameStart;
+        int hash = 0;
+        for (int i = nameStart; i < nameEnd; i++) {
+            hash = 31 * hash + choices.charAt(i);
+        }
+        int mask = nameSlots.length - 1;
+        int slot = hash & mask;
+        for (String name; (name = nameSlots[slot]) != null; slot = (slot + 1) & mask) {
+            if (name.length() == length && choices.regionMatches(nameStart, name, 0, length)) {
+                return name;
+            }
+        }
+
+        String name = choices.substring(nameStart, nameEnd);
+        nameSlots[slot] = name;
+        if (2 * ++nameCount > nameSlots.length) {
+            String[] old = nameSlots;
+            nameSlots = new String[2 * old.length];
+            for (String n : old) {
+                if (n != null) {
+                    int s = n.hashCode() & (nameSlots.length - 1);
+                    while (nameSlots[s] != null) {
+                        s = (s + 1) & (nameSlots.length - 1);
+                    }
+                    nameSlots[s] = n;
+                }
+            }
+        }
+        return name;
+    }
+}
@@ -0,0 +1,145 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/* Remembers the results of an interpretation function, so that each distinct ballot is only interpreted once.
+ * Real CVR exports have a few distinct ballots repeated many times, so most calls are answered from the cache.
+ * The key is the ballot itself, so it needs equals and hashCode that mean "the same ballot": use an EncodedBallot,
+ * or a choices string. (IRVChoices doesn't have equals, but its toString() is canonical - sorted by rank - so
+ * it can be keyed on that.) forChoicesStrings() makes a cache that goes straight from colorado-rla's choices
+ * strings to interpretations, so that a string that has been seen before isn't even parsed.
+ * At most maxEntries results are kept. The cache is split into segments by key, each with its own lock, so that
+ * many threads can use it at once; each segment throws out its least recently used entry when it is full. The keys
+ * don't spread evenly over the segments, so a small cache is kept in one segment, where it holds exactly maxEntries.
+ * The function is called without holding a lock, so two threads may occasionally both interpret the same new ballot.
+ * It must not return null.
+ */
+public class InterpretationCache<K, V> implements Function<K, V> {
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    // By default, only split into segments that can each hold at least this many entries.
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+
+    private final Function<K, V> interpretation;
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public InterpretationCache(int maxEntries, Function<K, V> interpretation) {
+        this(maxEntries, Integer.highestOneBit(Math.max(1, Math.min(DEFAULT_SEGMENTS, maxEntries / MIN_SEGMENT_ENTRIES))),
+                interpretation);
+    }
+
+    // segments must be a power of two, and no more than maxEntries, which are shared out between them as evenly as
+    // possible. With one segment, eviction is strictly LRU.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public InterpretationCache(int maxEntries, int segments, Function<K, V> interpretation) {
+        if (maxEntries < 1 || segments < 1 || Integer.bitCount(segments) != 1 || segments > maxEntries) {
+            throw new IllegalArgumentException("Need at least one entry per segment, and a power of two segments");
+        }
+        this.interpretation = interpretation;
+        this.segments = new Segment[segments];
+        for (int i = 0; i < segments; i++) {
+            this.segments[i] = new Segment<>(maxEntries / segments + (i < maxEntries % segments ? 1 : 0), evictions);
+        }
+        this.segmentMask = segments - 1;
+    }
+
+    // A cache from choices strings, like "Alice(1),Bob(2)", to the interpretation of the ballot they describe.
+    public static InterpretationCache<String, IRVChoices> forChoicesStrings(int maxEntries,
+                                                                           Function<IRVChoices, IRVChoices> interpretation) {
+        return new InterpretationCache<>(maxEntries, choices -> interpretation.apply(new IRVChoices(choices)));
+    }
+
+    @Override
+    public V apply(K ballot) {
+        Segment<K, V> segment = segments[spread(ballot.hashCode()) & segmentMask];
+        V result;
+        synchronized (segment) {
+            result = segment.get(ballot);
+        }
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        result = Objects.requireNonNull(interpretation.apply(ballot), "Interpretation function returned null");
+        synchronized (segment) {
+            segment.put(ballot, result);
+        }
+        return result;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // The number of results currently cached.
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public String toString() {
+        long hits = getHits();
+        long calls = hits + getMisses();
+        return String.format("%d hits, %d misses (%.1f%% hits), %d evictions, %d cached", hits, getMisses(),
+                calls == 0 ? 0.0 : 100.0 * hits / calls, getEvictions(), size());
+    }
+
+    // Mix the high bits of the hash into the low ones that choose the segment, as HashMap does.
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // An access-ordered LinkedHashMap that drops its eldest (least recently used) entry when it's over capacity.
+    @SuppressWarnings("serial")
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+        private final int capacity;
+        private final LongAdder evictions;
+
+        Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package au.org.democracydevelopers.ballotUtils;
+
+/* The ballot interpretation rules from
+ * https://www.sos.state.co.us/pubs/rule_making/CurrentRules/8CCR1505-1/Rule26.pdf
+ * as objects, so that they can be put together in a RulePipeline.
+ */
+public enum InterpretationRule {
+    // Rule 26.7.1: an overvoted rank, and everything after it, is ignored.
+    OVERVOTES("26.7.1"),
+    // Rule 26.7.2: everything after a skipped rank is ignored.
+    SKIPPED_RANKS("26.7.2"),
+    // Rule 26.7.3: only the highest rank given to each candidate counts.
+    DUPLICATES("26.7.3");
+
+    private final String ruleNumber;
+
+    InterpretationRule(String ruleNumber) {
+        this.ruleNumber = ruleNumber;
+    }
+
+    public String getRuleNumber() {
+        return ruleNumber;
+    }
+
+    public IRVChoices apply(IRVChoices b) {
+        return switch (this) {
+            case OVERVOTES -> b.ApplyRule1();
+            case SKIPPED_RANKS -> b.ApplyRule2();
+            case DUPLICATES -> b.ApplyRule3();
+        };
+    }
+
+    public EncodedBallot apply(EncodedBallot b) {
+        return switch (this) {
+            case OVERVOTES -> b.ApplyRule1();
+            case SKIPPED_RANKS -> b.ApplyRule2();
+            case DUPLICATES -> b.ApplyRule3();
+        };
+    }
+}
@@ -0,0 +1,81 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/* An ordered list of interpretation rules, applied one after the other. For example DuplicatesBeforeOvervotes is
+ * RulePipeline.of(DUPLICATES, OVERVOTES, SKIPPED_RANKS).
+ * apply() runs the rules one at a time, exactly as the example classes do, which makes a new ballot for each rule.
+ * For interpreting many ballots, compile() the pipeline into a FusedInterpreter, which gives the same results in a
+ * single pass over each ballot.
+ */
+public class RulePipeline {
+
+    public static final RulePipeline DUPLICATES_BEFORE_OVERVOTES = of(InterpretationRule.DUPLICATES,
+            InterpretationRule.OVERVOTES, InterpretationRule.SKIPPED_RANKS);
+    public static final RulePipeline OVERVOTES_BEFORE_DUPLICATES = of(InterpretationRule.OVERVOTES,
+            InterpretationRule.DUPLICATES, InterpretationRule.SKIPPED_RANKS);
+    public static final RulePipeline DUPLICATES_ONLY = of(InterpretationRule.DUPLICATES);
+
+    private final List<InterpretationRule> rules;
+
+    private RulePipeline(List<InterpretationRule> rules) {
+        this.rules = Collections.unmodifiableList(rules);
+    }
+
+    public static RulePipeline of(InterpretationRule... rules) {
+        return new RulePipeline(List.of(rules));
+    }
+
+    // The rules by the last digit of their numbers, in order: "3,1,2" is DUPLICATES_BEFORE_OVERVOTES.
+    public static RulePipeline parse(String rules) {
+        List<InterpretationRule> steps = new ArrayList<>();
+        for (String rule : rules.split(",")) {
+            switch (rule.trim()) {
+                case "1" -> steps.add(InterpretationRule.OVERVOTES);
+                case "2" -> steps.add(InterpretationRule.SKIPPED_RANKS);
+                case "3" -> steps.add(InterpretationRule.DUPLICATES);
+                default -> throw new IllegalArgumentException("Unknown rule " + rule + ": must be 1, 2 or 3");
+            }
+        }
+        return new RulePipeline(steps);
+    }
+
+    // This pipeline followed by one more rule.
+    public RulePipeline then(InterpretationRule rule) {
+        List<InterpretationRule> longer = new ArrayList<>(rules);
+        longer.add(rule);
+        return new RulePipeline(longer);
+    }
+
+    public List<InterpretationRule> getRules() {
+        return rules;
+    }
+
+    public IRVChoices apply(IRVChoices b) {
+        for (InterpretationRule rule : rules) {
+            b = rule.apply(b);
+        }
+        return b;
+    }
+
+    public EncodedBallot apply(EncodedBallot b) {
+        for (InterpretationRule rule : rules) {
+            b = rule.apply(b);
+        }
+        return b;
+    }
+
+    public FusedInterpreter compile() {
+        return new FusedInterpreter(this);
+    }
+
+    public String toString() {
+        List<String> numbers = new ArrayList<>();
+        for (InterpretationRule rule : rules) {
+            numbers.add(rule.getRuleNumber());
+        }
+        return String.join(" then ", numbers);
+    }
+}
@@ -0,0 +1,57 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class CvrCsvInterpreterTests {
+
+    private static final String HEADERS = """
+            Test Election,5.10.11.24,,,,,,,,,,,,,,
+            ,,,,,,,"Test Mayoral (Number of positions=1, Number of ranks=3)","Test Mayoral (Number of positions=1, Number of ranks=3)","Test Mayoral (Number of positions=1, Number of ranks=3)","Test Mayoral (Number of positions=1, Number of ranks=3)","Test Mayoral (Number of positions=1, Number of ranks=3)","Test Mayoral (Number of positions=1, Number of ranks=3)","Test Mayoral (Number of positions=1, Number of ranks=3)","Test Mayoral (Number of positions=1, Number of ranks=3)","Test Mayoral (Number of positions=1, Number of ranks=3)"
+            ,,,,,,,Alice(1),Bob(1),Chuan(1),Alice(2),Bob(2),Chuan(2),Alice(3),Bob(3),Chuan(3)
+            CvrNumber,TabulatorNum,BatchId,RecordId,ImprintedId,PrecinctPortion,BallotType,,,,,,,,,
+            """;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testInterpretsEachRowInOrder() throws Exception {
+        Path cvrs = dir.resolve("cvrs.csv");
+        Files.writeString(cvrs, HEADERS
+                + "1,1,1,1,1-1-1,Precinct 1,Ballot 1 - Type 1,1,0,0,0,1,0,0,0,1\n"
+                // Alice twice, so 26.7.3 drops her second preference.
+                + "2,1,1,2,1-1-2,\"Precinct 1, North\",Ballot 1 - Type 1,1,0,0,1,0,0,0,1,0\n"
+                // Bob and Chuan both first: an overvote.
+                + "3,1,1,3,1-1-3,Precinct 1,Ballot 1 - Type 1,0,1,1,1,0,0,0,0,0\n"
+                // Rank 2 skipped.
+                + "4,1,1,4,1-1-4,Precinct 1,Ballot 1 - Type 1,0,0,1,0,0,0,1,0,0\n");
+        Path output = dir.resolve("output.csv");
+
+        CvrCsvInterpreter interpreter = new CvrCsvInterpreter(RulePipeline.DUPLICATES_BEFORE_OVERVOTES, 2, 16);
+        CvrCsvInterpreter.Summary summary = interpreter.interpret(cvrs, output);
+
+        assert Files.readAllLines(output).equals(List.of("CvrNumber,ImprintedId,Interpretation",
+                "1,1-1-1,\"Alice(1),Bob(2),Chuan(3)\"",
+                "2,1-1-2,\"Alice(1)\"",
+                "3,1-1-3,\"\"",
+                "4,1-1-4,\"Chuan(1)\""));
+        assert summary.getBallots() == 4;
+        assert summary.getValidAsCast() == 1;
+        assert summary.getBlankAfterInterpretation() == 1;
+        // Steps: 26.7.3, 26.7.1, 26.7.2.
+        assert summary.getChangedBy(0) == 1;
+        assert summary.getChangedBy(1) == 1;
+        // Row 2 has a skipped rank once its duplicate is gone, as does row 4.
+        assert summary.getChangedBy(2) == 2;
+    }
+
+    @Test
+    void testSplitCsvLine() {
+        assert CvrCsvInterpreter.splitCsvLine(",\"a, \"\"b\"\"\",c").equals(List.of("", "a, \"b\"", "c"));
+    }
+}
@@ -0,0 +1,76 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class EncodedBallotTests {
+
+    private final CandidateDictionary candidates = new CandidateDictionary(List.of("Alice", "Bob", "Chuan", "Diego"));
+
+    @Test
+    void testRoundTrip() {
+        for (String choices : List.of("", "Alice(1)", "Chuan(2),Alice(1),Bob(2),Alice(7)", "Bob(2),Alice(2),Bob(2)")) {
+            IRVChoices b = new IRVChoices(choices);
+            EncodedBallot e = EncodedBallot.fromIRVChoices(b, candidates);
+            assert e.toIRVChoices(candidates).toString().equals(b.toString());
+            assert e.toString(candidates).equals(b.toString());
+        }
+    }
+
+    @Test
+    void testFromParser() {
+        IRVChoicesParser parser = new IRVChoicesParser();
+        parser.add("Chuan(2),Alice(1),Bob(2)");
+        EncodedBallot e = EncodedBallot.fromParser(parser, 0, candidates);
+        assert e.equals(EncodedBallot.fromIRVChoices(new IRVChoices("Chuan(2),Alice(1),Bob(2)"), candidates));
+        assert e.getCandidate(0) == 0 && e.getRank(0) == 1;
+        assert e.getCandidate(1) == 2 && e.getRank(1) == 2;
+    }
+
+    @Test
+    void testUnknownCandidate() {
+        boolean thrown = false;
+        try {
+            EncodedBallot.fromIRVChoices(new IRVChoices("Zoe(1)"), candidates);
+        } catch (IllegalArgumentException e) {
+            thrown = true;
+        }
+        assert thrown;
+    }
+
+    @Test
+    void testDuplicateCandidateInDictionary() {
+        boolean thrown = false;
+        try {
+            new CandidateDictionary(List.of("Alice", "Bob", "Alice"));
+        } catch (IllegalArgumentException e) {
+            thrown = true;
+        }
+        assert thrown;
+    }
+
+    /* Every ballot of up to 4 candidates and 4 ranks (see BallotInterpretationFunctionExperiments) gives the same
+     * results encoded as it does as an IRVChoices.
+     */
+    @Test
+    void testSameResultsAsIRVChoicesExhaustively() {
+        // The names BallotPads gives the candidates.
+        CandidateDictionary candidates = new CandidateDictionary(List.of("A", "B", "C", "D"));
+        for (int n = 3; n <= 4; n++) {
+            BallotPads pads = new BallotPads(n);
+            for (long pad = 0; pad < pads.size(); pad++) {
+                IRVChoices b = pads.toIRVChoices(pad);
+                EncodedBallot e = EncodedBallot.fromIRVChoices(b, candidates);
+                assert e.IsValid() == b.IsValid();
+                assert e.ApplyRule1().toString(candidates).equals(b.ApplyRule1().toString());
+                assert e.ApplyRule2().toString(candidates).equals(b.ApplyRule2().toString());
+                assert e.ApplyRule3().toString(candidates).equals(b.ApplyRule3().toString());
+                assert e.ApplyRule3().ApplyRule1().ApplyRule2().toString(candidates)
+                        .equals(b.ApplyRule3().ApplyRule1().ApplyRule2().toString());
+                assert e.ApplyRule1().ApplyRule3().ApplyRule2().toString(candidates)
+                        .equals(b.ApplyRule1().ApplyRule3().ApplyRule2().toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import au.org.democracydevelopers.ballotUtils.InterpretationFunctionExamples.DuplicatesBeforeOvervotes;
+import au.org.democracydevelopers.ballotUtils.InterpretationFunctionExamples.OvervotesBeforeDuplicates;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+class ExhaustiveComparisonTests {
+
+    // The disagreements found by comparing one ballot per renaming stand for exactly the pads that disagree.
+    @Test
+    void testSameCountsAsComparingEveryBallot() {
+        BallotPads pads = new BallotPads(3);
+        long disagreeing = 0;
+        for (long pad = 0; pad < pads.size(); pad++) {
+            IRVChoices b = pads.toIRVChoices(pad);
+            if (!DuplicatesBeforeOvervotes.InterpretValidIntent(b).toString()
+                    .equals(OvervotesBeforeDuplicates.InterpretValidIntent(b).toString())) {
+                disagreeing++;
+            }
+        }
+        ExhaustiveComparison.Result reduced = new ExhaustiveComparison(3)
+                .compare(DuplicatesBeforeOvervotes::InterpretValidIntent, OvervotesBeforeDuplicates::InterpretValidIntent);
+        ExhaustiveComparison.Result full = new ExhaustiveComparison(3, false, 5, ForkJoinPool.commonPool())
+                .compare(RulePipeline.DUPLICATES_BEFORE_OVERVOTES, RulePipeline.OVERVOTES_BEFORE_DUPLICATES);
+        assert reduced.getPadsCovered() == pads.size();
+        assert reduced.getPadsDisagreeing() == disagreeing;
+        assert full.getDisagreements() == disagreeing;
+        assert reduced.getBallotsCompared() < full.getBallotsCompared();
+    }
+
+    @Test
+    void testSamplesAreTheFirstDisagreements() {
+        ExhaustiveComparison comparison = new ExhaustiveComparison(4, true, 10, ForkJoinPool.commonPool());
+        ExhaustiveComparison.Result result = comparison.compare(RulePipeline.DUPLICATES_BEFORE_OVERVOTES,
+                RulePipeline.OVERVOTES_BEFORE_DUPLICATES);
+        BallotPads pads = comparison.getPads();
+        assert result.getDisagreements() > 10;
+        assert result.getSamples().size() == 10;
+        for (int i = 0; i < result.getSamples().size(); i++) {
+            long pad = result.getSamples().get(i);
+            assert i == 0 || pad > result.getSamples().get(i - 1);
+            assert pads.interpreter(RulePipeline.DUPLICATES_BEFORE_OVERVOTES).applyAsLong(pad)
+                    != pads.interpreter(RulePipeline.OVERVOTES_BEFORE_DUPLICATES).applyAsLong(pad);
+        }
+        // For example, A(1),A(2),B(2) is A(1),B(2) if the duplicate goes first, but A(1) if the overvote does.
+        assert pads.toString(result.getSamples().get(0)).equals("A(1),A(2),B(2)");
+    }
+
+    // Comparing a range in pieces gives the same answer as comparing it all at once, and progress is reported
+    // in order.
+    @Test
+    void testRangesAddUp() {
+        ExhaustiveComparison comparison = new ExhaustiveComparison(5);
+        ExhaustiveComparison.Result whole = comparison.compare(RulePipeline.DUPLICATES_BEFORE_OVERVOTES,
+                RulePipeline.OVERVOTES_BEFORE_DUPLICATES);
+        long[] cuts = {0, 12345, 1L << 20, 3_000_001, 1L << 25};
+        long covered = 0;
+        long disagreeing = 0;
+        for (int i = 0; i + 1 < cuts.length; i++) {
+            List<Long> progress = new ArrayList<>();
+            ExhaustiveComparison.Result part = comparison.compare(RulePipeline.DUPLICATES_BEFORE_OVERVOTES,
+                    RulePipeline.OVERVOTES_BEFORE_DUPLICATES, cuts[i], cuts[i + 1], p -> progress.add(p.getDoneTo()));
+            assert part.getDoneTo() == cuts[i + 1];
+            assert progress.equals(progress.stream().sorted().distinct().toList());
+            covered += part.getPadsCovered();
+            disagreeing += part.getPadsDisagreeing();
+        }
+        assert covered == 1L << 25;
+        assert disagreeing == whole.getPadsDisagreeing();
+    }
+}
@@ -0,0 +1,78 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import au.org.democracydevelopers.ballotUtils.InterpretationFunctionExamples.DuplicatesOnly;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+class ExhaustiveValidityCheckerTests {
+
+    // The rules on pads give the same results as on EncodedBallots, for every ballot of up to 4 candidates.
+    @Test
+    void testPadRulesMatchEncodedBallots() {
+        for (int n = 1; n <= 4; n++) {
+            BallotPads pads = new BallotPads(n);
+            CandidateDictionary candidates = new CandidateDictionary(List.of("A", "B", "C", "D").subList(0, n));
+            for (long pad = 0; pad < pads.size(); pad++) {
+                IRVChoices choices = pads.toIRVChoices(pad);
+                EncodedBallot ballot = EncodedBallot.fromIRVChoices(choices, candidates);
+                assert pads.fromIRVChoices(choices) == pad;
+                assert pads.IsValid(pad) == ballot.IsValid();
+                assert pads.toString(pads.ApplyRule1(pad)).equals(ballot.ApplyRule1().toString(candidates));
+                assert pads.toString(pads.ApplyRule2(pad)).equals(ballot.ApplyRule2().toString(candidates));
+                assert pads.toString(pads.ApplyRule3(pad)).equals(ballot.ApplyRule3().toString(candidates));
+            }
+        }
+    }
+
+    @Test
+    void testExamplePipelinesAreValid() {
+        for (RulePipeline pipeline : List.of(RulePipeline.DUPLICATES_BEFORE_OVERVOTES,
+                RulePipeline.OVERVOTES_BEFORE_DUPLICATES)) {
+            ExhaustiveValidityChecker.Result result = new ExhaustiveValidityChecker(5).check(pipeline);
+            assert result.isValid();
+            // The canonical ballots stand for every one of the 2^25 pads, once each.
+            assert result.getPadsCovered() == 1L << 25;
+            assert result.getBallotsChecked() < result.getPadsCovered() / 50;
+        }
+    }
+
+    // Checking one ballot per renaming gives the same answer as checking them all.
+    @Test
+    void testSymmetryReductionAgreesWithFullSearch() {
+        ExhaustiveValidityChecker full = new ExhaustiveValidityChecker(4, false, ForkJoinPool.commonPool());
+        ExhaustiveValidityChecker reduced = new ExhaustiveValidityChecker(4);
+        for (RulePipeline pipeline : List.of(RulePipeline.DUPLICATES_BEFORE_OVERVOTES, RulePipeline.DUPLICATES_ONLY,
+                RulePipeline.of(InterpretationRule.OVERVOTES), RulePipeline.of(InterpretationRule.SKIPPED_RANKS,
+                        InterpretationRule.DUPLICATES))) {
+            assert full.check(pipeline).isValid() == reduced.check(pipeline).isValid();
+        }
+        assert full.check(RulePipeline.DUPLICATES_BEFORE_OVERVOTES).getBallotsChecked() == 1L << 16;
+    }
+
+    // A function that gets wrong only a ballot that symmetry reduction skips (candidate B alone, where the canonical
+    // ballot is candidate A alone) is only caught by checking every ballot, which is what a function gets by default.
+    @Test
+    void testFunctionsAreNotSymmetryReducedByDefault() {
+        BallotPads pads = new BallotPads(3);
+        long skipped = 1L << 3;
+        // Candidate A at ranks 1 and 2.
+        IRVChoices invalid = pads.toIRVChoices(0b11);
+        IRVChoices valid = pads.toIRVChoices(0b1);
+        Function<IRVChoices, IRVChoices> nameDependent = b -> pads.fromIRVChoices(b) == skipped ? invalid : valid;
+
+        ExhaustiveValidityChecker.Result result = new ExhaustiveValidityChecker(3).check(nameDependent);
+        assert !result.isValid();
+        assert pads.fromIRVChoices(result.getCounterexample()) == skipped;
+        assert new ExhaustiveValidityChecker(3, true, ForkJoinPool.commonPool()).check(nameDependent).isValid();
+    }
+
+    @Test
+    void testCounterexampleIsInvalid() {
+        ExhaustiveValidityChecker.Result result = new ExhaustiveValidityChecker(3).check(DuplicatesOnly::InterpretValidIntent);
+        assert !result.isValid();
+        assert !DuplicatesOnly.InterpretValidIntent(result.getCounterexample()).IsValid();
+    }
+}
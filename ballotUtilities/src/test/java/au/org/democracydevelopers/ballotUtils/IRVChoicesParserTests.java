@@ -0,0 +1,88 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import au.org.democracydevelopers.ballotUtils.IRVChoicesParser.Status;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class IRVChoicesParserTests {
+
+    @Test
+    void testWellFormedBallots() {
+        List<Preference> preferences = new ArrayList<>();
+        assert IRVChoicesParser.parse("Candidate B(1), Candidate A(2) ,Candidate C(2)", preferences) == Status.OK;
+        assert preferences.size() == 3;
+        assert preferences.get(0).getCandidateName().equals("Candidate B");
+        assert preferences.get(1).getCandidateName().equals("Candidate A");
+        assert preferences.get(2).getRank() == 2;
+
+        assert new IRVChoices("Diego(4),Alice(1),Chuan(3),Bob(2)").toString().equals("Alice(1),Bob(2),Chuan(3),Diego(4)");
+    }
+
+    @Test
+    void testBlankBallot() {
+        List<Preference> preferences = new ArrayList<>();
+        assert IRVChoicesParser.parse("", preferences) == Status.OK;
+        assert IRVChoicesParser.parse("   ", preferences) == Status.OK;
+        assert preferences.isEmpty();
+        assert new IRVChoices("").getLength() == 0;
+    }
+
+    @Test
+    void testMalformedBallots() {
+        List<Preference> preferences = new ArrayList<>();
+        assert IRVChoicesParser.parse("Alice(1),", preferences) == Status.EMPTY_PREFERENCE;
+        assert IRVChoicesParser.parse("Alice(1),,Bob(2)", preferences) == Status.EMPTY_PREFERENCE;
+        assert IRVChoicesParser.parse("Alice(1),Bob", preferences) == Status.MISSING_OPEN_BRACKET;
+        assert IRVChoicesParser.parse("Alice()", preferences) == Status.BAD_RANK;
+        assert IRVChoicesParser.parse("Alice( 1)", preferences) == Status.BAD_RANK;
+        assert IRVChoicesParser.parse("Alice(-1)", preferences) == Status.BAD_RANK;
+        assert IRVChoicesParser.parse("Alice(99999999999)", preferences) == Status.BAD_RANK;
+        assert IRVChoicesParser.parse("Alice(1", preferences) == Status.MISSING_CLOSE_BRACKET;
+        assert IRVChoicesParser.parse("Alice(1)x", preferences) == Status.UNEXPECTED_CHARACTER;
+        // Nothing is left behind from the preferences before the error.
+        assert preferences.isEmpty();
+    }
+
+    @Test
+    void testMalformedBallotThrowsFromConstructor() {
+        boolean thrown = false;
+        try {
+            new IRVChoices("Alice(1),Bob(x)");
+        } catch (RuntimeException e) {
+            thrown = true;
+        }
+        assert thrown;
+    }
+
+    @Test
+    void testBulkParsing() {
+        IRVChoicesParser parser = new IRVChoicesParser();
+        String[] ballots = {"Alice(1),Bob(2)", "Bob(1),Alice(2)", "Alice(1", "", "Chuan(2),Alice(1),Bob(3)"};
+        for (int round = 0; round < 2; round++) {
+            parser.clear();
+            for (int i = 0; i < 1000; i++) {
+                for (String ballot : ballots) {
+                    parser.add(ballot);
+                }
+            }
+            assert parser.size() == 5000;
+            for (int b = 0; b < parser.size(); b++) {
+                String ballot = ballots[b % ballots.length];
+                if (ballot.equals("Alice(1")) {
+                    assert parser.getStatus(b) == Status.MISSING_CLOSE_BRACKET;
+                    assert parser.getLength(b) == 0;
+                    assert parser.getIRVChoices(b) == null;
+                } else {
+                    assert parser.getStatus(b) == Status.OK;
+                    assert parser.getIRVChoices(b).toString().equals(new IRVChoices(ballot).toString());
+                }
+            }
+        }
+        // Each distinct name is only one String.
+        assert parser.getCandidateName(0, 0) == parser.getCandidateName(1, 1);
+        assert parser.getCandidateName(4, 0).equals("Chuan");
+        assert parser.getRank(4, 0) == 2;
+    }
+}
@@ -0,0 +1,73 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import au.org.democracydevelopers.ballotUtils.InterpretationFunctionExamples.DuplicatesBeforeOvervotes;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+class InterpretationCacheTests {
+
+    @Test
+    void testHitsAndMisses() {
+        InterpretationCache<String, IRVChoices> cache =
+                InterpretationCache.forChoicesStrings(100, DuplicatesBeforeOvervotes::InterpretValidIntent);
+        assert cache.apply("Candidate B(1),Candidate A(2),Candidate C(2),Candidate C(3)").toString().equals("Candidate B(1)");
+        assert cache.apply("Candidate B(1),Candidate A(2),Candidate C(2),Candidate C(3)").toString().equals("Candidate B(1)");
+        assert cache.apply("Candidate A(1),Candidate B(3)").toString().equals("Candidate A(1)");
+        assert cache.getHits() == 1;
+        assert cache.getMisses() == 2;
+        assert cache.size() == 2;
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() {
+        AtomicInteger calls = new AtomicInteger();
+        InterpretationCache<String, String> cache = new InterpretationCache<>(2, 1, s -> {
+            calls.incrementAndGet();
+            return s.toUpperCase();
+        });
+        cache.apply("a");
+        cache.apply("b");
+        cache.apply("a");
+        // "b" is now the least recently used, so it goes.
+        cache.apply("c");
+        assert cache.getEvictions() == 1;
+        assert cache.size() == 2;
+        cache.apply("a");
+        assert calls.get() == 3;
+        cache.apply("b");
+        assert calls.get() == 4;
+    }
+
+    // A small cache holds exactly maxEntries, however the keys hash, and a segmented one shares them all out.
+    @Test
+    void testCapacity() {
+        InterpretationCache<Integer, Integer> small = new InterpretationCache<>(20, k -> k);
+        IntStream.range(0, 20).forEach(small::apply);
+        assert small.getEvictions() == 0;
+        assert small.size() == 20;
+
+        InterpretationCache<Integer, Integer> segmented = new InterpretationCache<>(1030, 16, k -> k);
+        IntStream.range(0, 16 * 1030).forEach(segmented::apply);
+        assert segmented.size() == 1030;
+    }
+
+    @Test
+    void testEncodedBallotsFromManyThreads() {
+        CandidateDictionary candidates = new CandidateDictionary(List.of("Alice", "Bob", "Chuan"));
+        List<EncodedBallot> ballots = List.of("Alice(1),Bob(2)", "Bob(1),Bob(2),Chuan(3)", "Chuan(1),Alice(1)",
+                "Alice(2),Bob(3)").stream().map(s -> EncodedBallot.fromIRVChoices(new IRVChoices(s), candidates)).toList();
+        FusedInterpreter interpreter = RulePipeline.DUPLICATES_BEFORE_OVERVOTES.compile();
+        InterpretationCache<EncodedBallot, EncodedBallot> cache = new InterpretationCache<>(16, 1,
+                interpreter::InterpretValidIntent);
+
+        IntStream.range(0, 100000).parallel().forEach(i -> {
+            EncodedBallot ballot = ballots.get(i % ballots.size());
+            assert cache.apply(ballot).equals(interpreter.InterpretValidIntent(ballot));
+        });
+        assert cache.getHits() + cache.getMisses() == 100000;
+        assert cache.size() == ballots.size();
+    }
+}
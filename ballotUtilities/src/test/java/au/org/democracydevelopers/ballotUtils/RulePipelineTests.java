@@ -0,0 +1,79 @@
+package au.org.democracydevelopers.ballotUtils;
+
+import au.org.democracydevelopers.ballotUtils.InterpretationFunctionExamples.DuplicatesBeforeOvervotes;
+import au.org.democracydevelopers.ballotUtils.InterpretationFunctionExamples.DuplicatesOnly;
+import au.org.democracydevelopers.ballotUtils.InterpretationFunctionExamples.OvervotesBeforeDuplicates;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static au.org.democracydevelopers.ballotUtils.InterpretationRule.*;
+
+class RulePipelineTests {
+
+    // The names BallotPads gives the candidates.
+    private final CandidateDictionary candidates = new CandidateDictionary(List.of("A", "B", "C", "D"));
+
+    @Test
+    void testGuideExamples() {
+        FusedInterpreter interpreter = RulePipeline.DUPLICATES_BEFORE_OVERVOTES.compile();
+        assert interpreter.InterpretValidIntent(new IRVChoices(
+                "Candidate A(1),Candidate B(1),Candidate C(1),Candidate C(2),Candidate B(3)")).toString().equals("");
+        assert interpreter.InterpretValidIntent(new IRVChoices(
+                "Candidate B(1),Candidate A(2),Candidate C(2),Candidate C(3)")).toString().equals("Candidate B(1)");
+        assert interpreter.InterpretValidIntent(new IRVChoices(
+                "Candidate A(1),Candidate B(3)")).toString().equals("Candidate A(1)");
+    }
+
+    @Test
+    void testPipelineToString() {
+        assert RulePipeline.of(DUPLICATES).then(OVERVOTES).then(SKIPPED_RANKS).toString()
+                .equals("26.7.3 then 26.7.1 then 26.7.2");
+    }
+
+    @Test
+    void testParse() {
+        assert RulePipeline.parse("3,1,2").toString().equals(RulePipeline.DUPLICATES_BEFORE_OVERVOTES.toString());
+        assert RulePipeline.parse("1").getRules().equals(List.of(OVERVOTES));
+    }
+
+    /* The compiled examples give the same result as the example classes on every ballot of up to 4 candidates and
+     * 4 ranks, as IRVChoices and encoded.
+     */
+    @Test
+    void testSameResultsAsExamplesExhaustively() {
+        assert sameResultsExhaustively(RulePipeline.DUPLICATES_BEFORE_OVERVOTES, DuplicatesBeforeOvervotes::InterpretValidIntent);
+        assert sameResultsExhaustively(RulePipeline.OVERVOTES_BEFORE_DUPLICATES, OvervotesBeforeDuplicates::InterpretValidIntent);
+        assert sameResultsExhaustively(RulePipeline.DUPLICATES_ONLY, DuplicatesOnly::InterpretValidIntent);
+    }
+
+    // Other orders, with rules repeated, agree with applying the rules one at a time.
+    @Test
+    void testOtherPipelinesExhaustively() {
+        List<RulePipeline> pipelines = List.of(RulePipeline.of(), RulePipeline.of(OVERVOTES),
+                RulePipeline.of(SKIPPED_RANKS), RulePipeline.of(SKIPPED_RANKS, DUPLICATES, OVERVOTES),
+                RulePipeline.of(OVERVOTES, OVERVOTES, SKIPPED_RANKS, OVERVOTES),
+                RulePipeline.of(DUPLICATES, SKIPPED_RANKS, OVERVOTES, DUPLICATES, SKIPPED_RANKS));
+        for (RulePipeline pipeline : pipelines) {
+            assert sameResultsExhaustively(pipeline, pipeline::apply);
+        }
+    }
+
+    private boolean sameResultsExhaustively(RulePipeline pipeline, Function<IRVChoices, IRVChoices> expected) {
+        FusedInterpreter interpreter = pipeline.compile();
+        BallotPads pads = new BallotPads(4);
+        for (long pad = 0; pad < pads.size(); pad++) {
+            IRVChoices b = pads.toIRVChoices(pad);
+            String interpretation = expected.apply(b).toString();
+            if (!interpreter.InterpretValidIntent(b).toString().equals(interpretation)) {
+                return false;
+            }
+            EncodedBallot e = EncodedBallot.fromIRVChoices(b, candidates);
+            if (!interpreter.InterpretValidIntent(e).toString(candidates).equals(interpretation)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,9 +1,7 @@
 #!/bin/bash
 
 # Run this from the Utilities-and-experiments directory.
-# Note this does not work for filenames with whitespace.
+# This translates every *Mayoral.json in the directory in a single JVM, several files at a time,
+# producing <name>.csv-1.csv and <name>.csv-1-manifest.csv next to each <name>.json, as before.
 
-for jsonfile in $(find src/main/resources/test-data/ -type f -name "*Mayoral.json")
-do
-   mvn exec:java -Dexec.mainClass="au.org.democracydevelopers.utils.StvToCvrTranslatorUtil" -Dexec.args="${jsonfile} ${jsonfile%.json}.csv"
-done
+mvn exec:java -Dexec.mainClass="au.org.democracydevelopers.utils.StvToCvrTranslatorUtil" -Dexec.args="src/main/resources/test-data/ *Mayoral.json"
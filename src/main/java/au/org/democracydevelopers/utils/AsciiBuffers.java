@@ -0,0 +1,43 @@
+package au.org.democracydevelopers.utils;
+
+/**
+ * Helpers for the byte-level writers (CvrCsvWriter, CvrSqlWriter), which render each row into a reusable byte
+ * buffer rather than building Strings. Each returns the position after what it wrote.
+ */
+class AsciiBuffers {
+
+  // Write the decimal digits of value into buffer at pos, as Integer.toString would.
+  static int putInt(byte[] buffer, int pos, int value) {
+    return putPadded(buffer, pos, value, 1);
+  }
+
+  // As putInt, but with leading zeros to at least width digits. For non-negative values this is what
+  // String.format("%0<width>d") produces.
+  static int putPadded(byte[] buffer, int pos, int value, int width) {
+    long v = value;
+    if (v < 0) {
+      buffer[pos++] = '-';
+      v = -v;
+    }
+    int end = pos + Math.max(width, digits(v));
+    for (int i = end - 1; i >= pos; i--) {
+      buffer[i] = (byte) ('0' + v % 10);
+      v /= 10;
+    }
+    return end;
+  }
+
+  static int put(byte[] buffer, int pos, byte[] bytes) {
+    System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+    return pos + bytes.length;
+  }
+
+  private static int digits(long v) {
+    int d = 1;
+    while (v >= 10) {
+      v /= 10;
+      d++;
+    }
+    return d;
+  }
+}
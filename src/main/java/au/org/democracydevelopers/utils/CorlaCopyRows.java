@@ -0,0 +1,163 @@
+package au.org.democracydevelopers.utils;
+
+import au.org.democracydevelopers.utils.domain.stv.BallotTable;
+import au.org.democracydevelopers.utils.domain.stv.Candidate;
+import au.org.democracydevelopers.utils.domain.stv.Metadata;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The colorado-rla rows for one contest, as COPY data: one county and one contest row, then a cast_vote_record
+ * and a cvr_contest_info row for every ballot. The values are the ones StvToSqlTranslatorUtil puts in its INSERT
+ * statements. The ballot rows are produced by a cursor over the BallotTable: next() moves to the next ballot, after
+ * which either or both of its rows can be written. copy() saves the position, so that the same range of ballots
+ * can be written to one table and then the other.
+ * The column types (for binary) are the ones in the colorado-rla schema: ids are bigint, and the other integer
+ * columns are integer.
+ */
+public class CorlaCopyRows {
+
+  public static final String COUNTY_COLUMNS = "county (id, name)";
+
+  public static final String CONTEST_COLUMNS =
+      "contest (county_id, id, version, description, name, sequence_number, votes_allowed, winners_allowed)";
+
+  public static final String CAST_VOTE_RECORD_COLUMNS =
+      "cast_vote_record (id, audit_board_index, comment, cvr_id, ballot_type, "+
+        "batch_id, county_id, cvr_number, imprinted_id, record_id, record_type, scanner_id, "+
+        "sequence_number, timestamp, version, rand, revision, round_number, uri)";
+
+  public static final String CVR_CONTEST_INFO_COLUMNS = "cvr_contest_info (cvr_id, county_id, choices, contest_id, index)";
+
+  // cvr IDs are the contest ID followed by the count padded to 7 digits, i.e. the contest ID times
+  // CVR_ID_MULTIPLIER plus the count, in the INSERT statements (CvrSqlWriter) as well as the COPY rows.
+  public static final int CVR_ID_DIGITS = 7;
+  public static final int CVR_ID_MULTIPLIER = 10000000;
+
+  // Contests must have fewer votes than this, whether they are written as INSERTs or COPY rows. (It is a tenth of
+  // what the IDs could hold.)
+  public static final int MAX_VOTES_PER_ELECTION = 1000000;
+
+  private static final int MAX_RECORD_PER_BATCH = 78;
+
+  private final int countyAndContestID;
+  private final List<Candidate> candidates;
+  private final BallotTable votes;
+
+  // The current ballot: index into votes, which copy of it, and its count, batch and record.
+  private int ballot = 0;
+  private int repeat = -1;
+  private int count = 0;
+  private int batchId = 1;
+  private int recordId = 0;
+  private String choices;
+
+  public CorlaCopyRows(int countyAndContestID, List<Candidate> candidates, BallotTable votes) {
+    if (votes.getTotalCount() >= MAX_VOTES_PER_ELECTION) {
+      throw new RuntimeException("Too many votes for unique vote IDs");
+    }
+    this.countyAndContestID = countyAndContestID;
+    this.candidates = candidates;
+    this.votes = votes;
+  }
+
+  // A cursor at the same position, which moves independently.
+  public CorlaCopyRows copy() {
+    CorlaCopyRows copy = new CorlaCopyRows(countyAndContestID, candidates, votes);
+    copy.ballot = ballot;
+    copy.repeat = repeat;
+    copy.count = count;
+    copy.batchId = batchId;
+    copy.recordId = recordId;
+    copy.choices = choices;
+    return copy;
+  }
+
+  /**
+   * Move to the next ballot.
+   * @return false if there are no more.
+   */
+  public boolean next() {
+    repeat++;
+    while (ballot < votes.size() && repeat >= votes.getCount(ballot)) {
+      ballot++;
+      repeat = 0;
+      choices = null;
+    }
+    if (ballot >= votes.size()) {
+      return false;
+    }
+    if (choices == null) {
+      choices = "[\""+String.join("\",\"", votes.getBallot(ballot).stream().map(c -> candidates.get(c).getName()).toList())+"\"]";
+    }
+    count++;
+    if (recordId < MAX_RECORD_PER_BATCH) {
+      recordId++;
+    } else {
+      recordId = 1;
+      batchId++;
+    }
+    return true;
+  }
+
+  public void writeCastVoteRecord(PgCopyWriter out) throws IOException {
+    String imprintedID = "1-"+batchId+'-'+recordId;
+    out.startRow(19);
+    out.writeBigint(cvrID());                  // id
+    out.writeNull();                           // audit_board_index
+    out.writeNull();                           // comment
+    out.writeNull();                           // cvr_id
+    out.writeText("Type 1");                   // ballot_type
+    out.writeText(Integer.toString(batchId));  // batch_id
+    out.writeBigint(countyAndContestID);       // county_id
+    out.writeInt(count);                       // cvr_number
+    out.writeText(imprintedID);                // imprinted_id
+    out.writeInt(recordId);                    // record_id
+    out.writeText("UPLOADED");                 // record_type
+    out.writeInt(1);                           // scanner_id
+    out.writeInt(count);                       // sequence_number
+    out.writeNull();                           // timestamp
+    out.writeBigint(0);                        // version
+    out.writeNull();                           // rand
+    out.writeNull();                           // revision
+    out.writeNull();                           // round_number
+    out.writeText("cvr:1:"+imprintedID);       // uri
+    out.endRow();
+  }
+
+  // The choices are not SQL-escaped, because COPY data isn't SQL.
+  public void writeCvrContestInfo(PgCopyWriter out) throws IOException {
+    out.startRow(5);
+    out.writeBigint(cvrID());                  // cvr_id
+    out.writeBigint(countyAndContestID);       // county_id
+    out.writeText(choices);                    // choices
+    out.writeBigint(countyAndContestID);       // contest_id
+    out.writeInt(0);                           // index
+    out.endRow();
+  }
+
+  public static void writeCounty(PgCopyWriter out, int countyAndContestID, Metadata metadata) throws IOException {
+    out.startRow(2);
+    out.writeBigint(countyAndContestID);
+    out.writeText(metadata.getName().getElectorate()+" County");
+    out.endRow();
+  }
+
+  public static void writeContest(PgCopyWriter out, int countyAndContestID, Metadata metadata) throws IOException {
+    out.startRow(8);
+    out.writeBigint(countyAndContestID);       // county_id
+    out.writeBigint(countyAndContestID);       // id
+    out.writeBigint(0);                        // version
+    out.writeText("IRV");                      // description
+    out.writeText(metadata.getName().getElectorate()); // name
+    out.writeInt(countyAndContestID);          // sequence_number
+    out.writeInt(metadata.getCandidates().size()); // votes_allowed
+    out.writeInt(1);                           // winners_allowed
+    out.endRow();
+  }
+
+  // Same as countyAndContestID+String.format("%07d",count).
+  private long cvrID() {
+    return (long) countyAndContestID * CVR_ID_MULTIPLIER + count;
+  }
+}
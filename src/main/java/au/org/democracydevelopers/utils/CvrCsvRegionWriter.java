@@ -0,0 +1,226 @@
+package au.org.democracydevelopers.utils;
+
+import au.org.democracydevelopers.utils.domain.stv.BallotTable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes a single CVR CSV with several threads, producing exactly the bytes the sequential buildCsv does.
+ * This works because the length of every row is known in advance: row c (counting from 1) has cvrNumber c,
+ * batchId (c-1)/78+1 and recordId (c-1)%78+1, and its vote columns always have the same length. So the offset of
+ * any row can be calculated without rendering the ones before it (see rowsLength). The rows are divided into
+ * regions, the file is sized up front, and each thread renders its regions with a CvrCsvWriter and writes them at
+ * their offsets with positional FileChannel writes. Each region checks that it ended exactly where it should.
+ * The .sha256sum needs the bytes hashed in order, so each region is rendered into memory, and once it is written
+ * the regions are hashed in order as they come back. Regions are at most MAX_REGION_BYTES (worked out from the
+ * length of the rows, which grows with the square of the number of candidates), and at most two per thread are
+ * rendered ahead of the one being hashed, so this holds about ten megabytes per thread at most.
+ * Splitting only pays off for files of more than one region; see regions().
+ */
+public class CvrCsvRegionWriter {
+
+  // Regions per thread, so that a thread that gets a slow region doesn't hold everything up.
+  private static final int REGIONS_PER_THREAD = 4;
+
+  // Don't bother splitting into regions smaller than this many bytes.
+  private static final long MIN_REGION_BYTES = 1 << 20;
+
+  // Nor larger than this, since each one is held in memory until it has been hashed.
+  private static final long MAX_REGION_BYTES = 1 << 22;
+
+  // Regions per thread that can be rendered ahead of the one being hashed.
+  private static final int REGIONS_AHEAD_PER_THREAD = 2;
+
+  private final int recordsPerBatch;
+  private final int numberOfCandidates;
+  private final String precinctPortion;
+  private final String ballotType;
+  private final int suffixLength;
+
+  public CvrCsvRegionWriter(int recordsPerBatch, int numberOfCandidates, String precinctPortion, String ballotType) {
+    this.recordsPerBatch = recordsPerBatch;
+    this.numberOfCandidates = numberOfCandidates;
+    this.precinctPortion = precinctPortion;
+    this.ballotType = ballotType;
+    this.suffixLength = new CvrCsvWriter(OutputStream.nullOutputStream(), precinctPortion, ballotType)
+        .suffixLength(numberOfCandidates);
+  }
+
+  /**
+   * The number of regions that write() would split a file of this many ballots into. If it is 1, there is nothing
+   * to be gained over writing the file sequentially.
+   */
+  public int regions(long ballots, int threads) {
+    return regions(ballots, regionRows(ballots, threads));
+  }
+
+  private static int regions(long ballots, long regionRows) {
+    return (int) ((ballots + regionRows - 1) / regionRows);
+  }
+
+  // Rows per region: enough for a few regions per thread, within the byte limits for rows of this (average) length.
+  private long regionRows(long ballots, int threads) {
+    long rowLength = Math.max(1, rowsLength(ballots) / Math.max(1, ballots));
+    long target = (ballots + (long) threads * REGIONS_PER_THREAD - 1) / ((long) threads * REGIONS_PER_THREAD);
+    return Math.max(1, Math.min(MAX_REGION_BYTES / rowLength, Math.max(MIN_REGION_BYTES / rowLength, target)));
+  }
+
+  /**
+   * Write the header lines and then one row for every ballot in votes, to path, using up to 'threads' threads,
+   * and its .sha256sum. If anything goes wrong, the partial file is deleted.
+   * @return the number of ballots written.
+   */
+  public long write(List<String> headerLines, BallotTable votes, String path, int threads) throws Exception {
+    return write(headerLines, votes, path, threads, regionRows(votes.getTotalCount(), threads));
+  }
+
+  // As above, with regions of the given number of rows (which tests can make small).
+  long write(List<String> headerLines, BallotTable votes, String path, int threads, long regionRows)
+      throws Exception {
+    ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+    try (CvrCsvWriter header = new CvrCsvWriter(headerBytes, precinctPortion, ballotType)) {
+      for (String line : headerLines) {
+        header.writeLine(line);
+      }
+    }
+    final byte[] header = headerBytes.toByteArray();
+
+    // firstCount[b] is the cvrNumber of the first row for distinct ballot b.
+    final long[] firstCount = new long[votes.size() + 1];
+    firstCount[0] = 1;
+    for (int b = 0; b < votes.size(); b++) {
+      firstCount[b + 1] = firstCount[b] + votes.getCount(b);
+    }
+    final long ballots = firstCount[votes.size()] - 1;
+    if (ballots > Integer.MAX_VALUE) {
+      throw new RuntimeException("Too many ballots for int cvrNumbers: " + ballots);
+    }
+
+    int regions = regions(ballots, regionRows);
+    MessageDigest digest = Sha256Sums.newDigest();
+
+    try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+      file.setLength(header.length + rowsLength(ballots));
+      FileChannel channel = file.getChannel();
+      writeAt(channel, header, 0);
+      digest.update(header);
+
+      int poolSize = Math.max(1, Math.min(threads, regions));
+      ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+      try {
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        int next = 0;
+        while (next < regions || !pending.isEmpty()) {
+          while (next < regions && pending.size() < poolSize * REGIONS_AHEAD_PER_THREAD) {
+            final long from = 1 + next * regionRows;
+            final long to = Math.min(ballots + 1, from + regionRows);
+            pending.add(executor.submit(() -> writeRegion(channel, header.length, votes, firstCount, from, to)));
+            next++;
+          }
+          try {
+            digest.update(pending.removeFirst().get());
+          } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+          }
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    } catch (Exception e) {
+      Files.deleteIfExists(Paths.get(path));
+      Files.deleteIfExists(Paths.get(path + Sha256Sums.SUFFIX));
+      throw e;
+    }
+
+    Sha256Sums.writeSidecar(path, digest);
+    return ballots;
+  }
+
+  // Write the rows with cvrNumbers in [from, to), and return them for hashing.
+  private byte[] writeRegion(FileChannel channel, long headerLength, BallotTable votes, long[] firstCount, long from,
+      long to) throws IOException {
+    long start = headerLength + rowsLength(from - 1);
+    long end = headerLength + rowsLength(to - 1);
+
+    // The distinct ballot that row 'from' belongs to.
+    int b = Arrays.binarySearch(firstCount, from);
+    if (b < 0) {
+      b = -b - 2;
+    }
+    // Skip empty entries, which share their firstCount with the next one.
+    while (votes.getCount(b) == 0) {
+      b++;
+    }
+
+    ByteArrayOutputStream region = new ByteArrayOutputStream((int) (end - start));
+    try (CvrCsvWriter out = new CvrCsvWriter(region, precinctPortion, ballotType)) {
+      for (long count = from; count < to; b++) {
+        long last = Math.min(to, firstCount[b + 1]);
+        if (count < last) {
+          out.setBallot(numberOfCandidates, votes.getPreferences(b));
+        }
+        for (; count < last; count++) {
+          out.writeRow((int) count, 1, (int) ((count - 1) / recordsPerBatch + 1), (int) ((count - 1) % recordsPerBatch + 1));
+        }
+      }
+    }
+    byte[] bytes = region.toByteArray();
+    if (start + bytes.length != end) {
+      throw new IllegalStateException("Region of rows " + from + "-" + (to - 1) + " ended at " + (start + bytes.length)
+          + " rather than " + end);
+    }
+    writeAt(channel, bytes, start);
+    return bytes;
+  }
+
+  // A positional write, which doesn't move the channel's own position, so several threads can write at once.
+  private static void writeAt(FileChannel channel, byte[] bytes, long position) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position());
+    }
+  }
+
+  /**
+   * The number of bytes in the first n rows. Each row is
+   * cvrNumber,1,batchId,recordId,1-batchId-recordId followed by the suffix, i.e. 8 characters plus the digits of
+   * cvrNumber, twice the digits of batchId and twice the digits of recordId, plus suffixLength.
+   */
+  private long rowsLength(long n) {
+    long fullBatches = n / recordsPerBatch;
+    long inLastBatch = n % recordsPerBatch;
+    long batchDigits = recordsPerBatch * digitsUpTo(fullBatches) + inLastBatch * digits(fullBatches + 1);
+    long recordDigits = fullBatches * digitsUpTo(recordsPerBatch) + digitsUpTo(inLastBatch);
+    return n * (8 + suffixLength) + digitsUpTo(n) + 2 * batchDigits + 2 * recordDigits;
+  }
+
+  // The total number of decimal digits in 1, 2, ..., n.
+  private static long digitsUpTo(long n) {
+    long total = 0;
+    long low = 1;
+    for (int d = 1; low <= n; d++, low *= 10) {
+      long high = Math.min(n, low * 10 - 1);
+      total += (high - low + 1) * d;
+    }
+    return total;
+  }
+
+  private static int digits(long v) {
+    return Long.toString(v).length();
+  }
+}
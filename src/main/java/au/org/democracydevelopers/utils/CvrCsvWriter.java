@@ -0,0 +1,94 @@
+package au.org.democracydevelopers.utils;
+
+import static au.org.democracydevelopers.utils.AsciiBuffers.putInt;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import au.org.democracydevelopers.utils.domain.cvr.Cvr;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the rows of a Colorado RLA CVR CSV as bytes. Every copy of the same distinct ballot has the
+ * same PrecinctPortion, BallotType and n^2 vote columns, so that suffix is rendered (as UTF-8) once per
+ * distinct ballot by setBallot. Each row then only has to format its first five fields (cvrNumber,
+ * tabulatorNum, batchId, recordId and imprintedId) into a reusable byte buffer and copy the suffix after it.
+ * The output is byte-for-byte what a PrintWriter would produce from Cvr.toString.
+ */
+public class CvrCsvWriter implements Closeable {
+
+  private static final byte[] NEWLINE = System.lineSeparator().getBytes(UTF_8);
+
+  // Comfortably fits five fields with seven ints of at most 11 characters each, plus separators.
+  private final byte[] prefix = new byte[128];
+  private final OutputStream out;
+  private final String precinctPortion;
+  private final String ballotType;
+  private byte[] suffix;
+
+  public CvrCsvWriter(OutputStream out, String precinctPortion, String ballotType) {
+    this.out = new BufferedOutputStream(out, 1 << 16);
+    this.precinctPortion = precinctPortion;
+    this.ballotType = ballotType;
+  }
+
+  // Write a line (e.g. a header) as is.
+  public void writeLine(String line) throws IOException {
+    out.write(line.getBytes(UTF_8));
+    out.write(NEWLINE);
+  }
+
+  /**
+   * Render the suffix shared by every copy of this distinct ballot. Subsequent calls to writeRow use it.
+   */
+  public void setBallot(int numberOfCandidates, int[] preferences) {
+    StringBuilder builder = new StringBuilder(precinctPortion.length() + ballotType.length()
+        + 2 * numberOfCandidates * numberOfCandidates + 4)
+        .append(',').append(precinctPortion)
+        .append(',').append(ballotType)
+        .append(',');
+    Cvr.appendVoteColumns(builder, numberOfCandidates, preferences);
+    suffix = (builder + System.lineSeparator()).getBytes(UTF_8);
+  }
+
+  /**
+   * The length in bytes of the suffix setBallot renders. It doesn't depend on the preferences, only on how many
+   * candidates there are.
+   */
+  public int suffixLength(int numberOfCandidates) {
+    return 3 + precinctPortion.getBytes(UTF_8).length + ballotType.getBytes(UTF_8).length
+        + Math.max(0, 2 * numberOfCandidates * numberOfCandidates - 1) + NEWLINE.length;
+  }
+
+  /**
+   * Write one row for the current ballot. The imprintedId is tabulatorNum-batchId-recordId.
+   */
+  public void writeRow(int cvrNumber, int tabulatorNum, int batchId, int recordId) throws IOException {
+    int pos = putInt(prefix, 0, cvrNumber);
+    prefix[pos++] = ',';
+    pos = putInt(prefix, pos, tabulatorNum);
+    prefix[pos++] = ',';
+    pos = putInt(prefix, pos, batchId);
+    prefix[pos++] = ',';
+    pos = putInt(prefix, pos, recordId);
+    prefix[pos++] = ',';
+    pos = putInt(prefix, pos, tabulatorNum);
+    prefix[pos++] = '-';
+    pos = putInt(prefix, pos, batchId);
+    prefix[pos++] = '-';
+    pos = putInt(prefix, pos, recordId);
+    out.write(prefix, 0, pos);
+    out.write(suffix);
+  }
+
+  // Write out anything buffered.
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,132 @@
+package au.org.democracydevelopers.utils;
+
+import static au.org.democracydevelopers.utils.AsciiBuffers.put;
+import static au.org.democracydevelopers.utils.AsciiBuffers.putInt;
+import static au.org.democracydevelopers.utils.AsciiBuffers.putPadded;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Renders the cast_vote_record and cvr_contest_info value rows that StvToSqlTranslatorUtil writes, as bytes.
+ * Everything that is the same for every copy of a distinct ballot, in particular the escaped choices literal, is
+ * rendered once by setBallot. Each row then only has to write its numbers into a reusable byte buffer.
+ * The output is byte-for-byte what the old String-concatenating version printed.
+ * Note there is NO EFFORT AT PROPER SQL ESCAPING beyond doubling single quotes, as for the rest of the translator.
+ */
+public class CvrSqlWriter {
+
+  private static final byte[] NEWLINE = System.lineSeparator().getBytes(UTF_8);
+
+  private static final byte[] CVR_BEFORE_BATCH = ",null, null, null,'Type 1','".getBytes(UTF_8);
+  private static final byte[] CVR_BEFORE_RECORD_TYPE = ",'UPLOADED',1,".getBytes(UTF_8);
+  private static final byte[] CVR_BEFORE_URI = ",null, 0, null, null, null,'cvr:1:".getBytes(UTF_8);
+
+  // Comfortably fits a row without its INSERT prefix or choices: eleven ints of at most 11 characters, plus text.
+  private final byte[] buffer = new byte[512];
+  private final byte[] castVoteRecordInsert;
+  private final byte[] cvrContestInfoInsert;
+  private final int countyAndContestID;
+  private final boolean doBulk;
+  // ",countyID,'["A","B"]',contestID,0)" for the current ballot.
+  private byte[] contestInfoSuffix;
+
+  /**
+   * @param castVoteRecordInsert the INSERT INTO ... VALUES that starts each cast_vote_record row if not doBulk.
+   * @param cvrContestInfoInsert likewise for cvr_contest_info.
+   */
+  public CvrSqlWriter(int countyAndContestID, boolean doBulk, String castVoteRecordInsert, String cvrContestInfoInsert) {
+    this.countyAndContestID = countyAndContestID;
+    this.doBulk = doBulk;
+    this.castVoteRecordInsert = castVoteRecordInsert.getBytes(UTF_8);
+    this.cvrContestInfoInsert = cvrContestInfoInsert.getBytes(UTF_8);
+  }
+
+  /**
+   * Render the part of the cvr_contest_info row shared by every copy of this distinct ballot.
+   * @param choices the candidate names, in preference order, not yet escaped.
+   */
+  public void setBallot(List<String> choices) {
+    StringBuilder builder = new StringBuilder(",").append(countyAndContestID).append(",'[\"");
+    for (int i = 0; i < choices.size(); i++) {
+      if (i > 0) {
+        builder.append("\",\"");
+      }
+      builder.append(StvReadingFunctionUtils.escapeChars(choices.get(i)));
+    }
+    builder.append("\"]',").append(countyAndContestID).append(",0)");
+    contestInfoSuffix = builder.toString().getBytes(UTF_8);
+  }
+
+  /**
+   * Write one cast_vote_record row. If doBulk, rows are followed by a comma unless they end the statement, when
+   * they get a semicolon. Otherwise each is a complete INSERT statement.
+   */
+  public void writeCastVoteRecord(OutputStream out, int count, int batchId, int recordId, boolean endsStatement)
+      throws IOException {
+    if (!doBulk) {
+      out.write(castVoteRecordInsert);
+    }
+    int pos = 0;
+    buffer[pos++] = '(';
+    pos = putCvrID(pos, count);
+    pos = put(buffer, pos, CVR_BEFORE_BATCH);
+    pos = putInt(buffer, pos, batchId);
+    buffer[pos++] = '\'';
+    buffer[pos++] = ',';
+    pos = putInt(buffer, pos, countyAndContestID);
+    buffer[pos++] = ',';
+    pos = putInt(buffer, pos, count);
+    buffer[pos++] = ',';
+    buffer[pos++] = '\'';
+    pos = putImprintedID(pos, batchId, recordId);
+    buffer[pos++] = '\'';
+    buffer[pos++] = ',';
+    pos = putInt(buffer, pos, recordId);
+    pos = put(buffer, pos, CVR_BEFORE_RECORD_TYPE);
+    pos = putInt(buffer, pos, count);
+    pos = put(buffer, pos, CVR_BEFORE_URI);
+    pos = putImprintedID(pos, batchId, recordId);
+    buffer[pos++] = '\'';
+    buffer[pos++] = ')';
+    buffer[pos++] = (byte) (doBulk && !endsStatement ? ',' : ';');
+    pos = put(buffer, pos, NEWLINE);
+    out.write(buffer, 0, pos);
+  }
+
+  /**
+   * Write one cvr_contest_info row for the current ballot, with the same separators as writeCastVoteRecord.
+   */
+  public void writeCvrContestInfo(OutputStream out, int count, boolean endsStatement) throws IOException {
+    if (!doBulk) {
+      out.write(cvrContestInfoInsert);
+    }
+    int pos = 0;
+    buffer[pos++] = '(';
+    buffer[pos++] = ' ';
+    pos = putCvrID(pos, count);
+    out.write(buffer, 0, pos);
+    out.write(contestInfoSuffix);
+    pos = 0;
+    buffer[pos++] = (byte) (doBulk && !endsStatement ? ',' : ';');
+    pos = put(buffer, pos, NEWLINE);
+    out.write(buffer, 0, pos);
+  }
+
+  // The unique ID: the contest ID followed by the count, padded to 7 digits, as in CorlaCopyRows.
+  private int putCvrID(int pos, int count) {
+    pos = putInt(buffer, pos, countyAndContestID);
+    return putPadded(buffer, pos, count, CorlaCopyRows.CVR_ID_DIGITS);
+  }
+
+  // Scanner ID - batch ID - record ID. The scanner ID is always 1.
+  private int putImprintedID(int pos, int batchId, int recordId) {
+    buffer[pos++] = '1';
+    buffer[pos++] = '-';
+    pos = putInt(buffer, pos, batchId);
+    buffer[pos++] = '-';
+    return putInt(buffer, pos, recordId);
+  }
+}
@@ -0,0 +1,43 @@
+package au.org.democracydevelopers.utils;
+
+import java.util.Map;
+import java.util.zip.Deflater;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/*
+ * How to gzip the translators' output, if at all (null means don't). The level is the usual 1 (fastest) to 9
+ * (smallest), or 0 to store uncompressed. The block size is how much compressed output is buffered before it is
+ * written to the file - much larger than GZIPOutputStream's default of 512 bytes, so that the disk sees a few
+ * large writes rather than many small ones.
+ */
+@AllArgsConstructor
+@Data
+public class GzipSettings {
+  public static final String SUFFIX = ".gz";
+
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 18;
+
+  private int level;
+  private int blockSize;
+
+  /**
+   * Read the settings from command-line options: --gzip or --gzip=level, and --gzip-block=bytes.
+   * @return null if there is no --gzip option.
+   * @throws NumberFormatException if the level or block size is not a number, or out of range.
+   */
+  public static GzipSettings fromOptions(Map<String, String> options) {
+    if (!options.containsKey("gzip")) {
+      return null;
+    }
+    String level = options.get("gzip");
+    GzipSettings settings = new GzipSettings(level.isEmpty() ? Deflater.DEFAULT_COMPRESSION : Integer.parseInt(level),
+        Integer.parseInt(options.getOrDefault("gzip-block", Integer.toString(DEFAULT_BLOCK_SIZE))));
+    // DEFAULT_COMPRESSION (-1) is only for a bare --gzip; it can't be asked for as --gzip=-1.
+    if ((!level.isEmpty() && (settings.level < Deflater.NO_COMPRESSION || settings.level > Deflater.BEST_COMPRESSION))
+        || settings.blockSize < 1) {
+      throw new NumberFormatException("gzip level must be 0-9 and block size positive");
+    }
+    return settings;
+  }
+}
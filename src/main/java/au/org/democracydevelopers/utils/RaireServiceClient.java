@@ -0,0 +1,357 @@
+package au.org.democracydevelopers.utils;
+
+import static au.org.democracydevelopers.utils.StvReadingFunctionUtils.parseOptions;
+import static java.lang.System.exit;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Submits raire-service requests (the -raire-service.json files StvToCvrTranslatorUtil writes) to a raire-service,
+ * several at once.
+ * mvn compile exec:java -Dexec.mainClass="au.org.democracydevelopers.utils.RaireServiceClient" -Dexec.args="endpoint source [--in-flight=N] [--retries=N] [--backoff=ms] [--repeat=N]"
+ * The endpoint is the full URL requests are POSTed to. If source is a directory, every -raire-service.json (or
+ * .json.gz) file under it is submitted, in path order. Aggregated requests (-raire-service-aggregated.json) aren't
+ * what the raire-service takes, so they are left out.
+ * At most --in-flight requests (default 4) are outstanding at once. Each request body is streamed from its file
+ * (decompressing it if it is gzipped) rather than read into memory. A request's deadline, for the whole response, is
+ * its timeProvisionForResult plus DEADLINE_MARGIN, or DEFAULT_DEADLINE if it doesn't have one; if it times out or the
+ * connection fails, or the service replies 503, it is retried up to --retries times (default 2), waiting --backoff
+ * ms (default 1000) before the first retry and twice as long before each one after that.
+ * A successful response is saved next to the request, as name-raire-response.json. --repeat=N submits every contest
+ * N times, to measure how long the service takes: at the end, the median, 90th and 99th percentile and maximum
+ * latency (including retries) are printed for each contest, and for all of them together.
+ * Any HTTP server will do for testing, e.g. a com.sun.net.httpserver.HttpServer stub on localhost.
+ */
+public class RaireServiceClient {
+
+  public static final String RESPONSE_SUFFIX = "-raire-response.json";
+
+  // Allowance on top of timeProvisionForResult for the request and response to get there and back.
+  private static final Duration DEADLINE_MARGIN = Duration.ofSeconds(10);
+
+  // The deadline for requests without a timeProvisionForResult.
+  private static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(70);
+
+  private static final String usage = "Usage: mvn compile exec:java -Dexec.mainClass=\"au.org.democracydevelopers.utils.RaireServiceClient\" -Dexec.args=\"endpoint source [--in-flight=N] [--retries=N] [--backoff=ms] [--repeat=N]\"";
+
+  public static void main(String[] commandLine) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    String[] args = parseOptions(commandLine, options);
+    if (args.length != 2) {
+      System.err.println("Invalid number of arguments. Please use command as following");
+      System.out.println(usage);
+      exit(1);
+    }
+
+    int inFlight = 4;
+    int retries = 2;
+    long backoff = 1000;
+    int repeat = 1;
+    try {
+      inFlight = Integer.parseInt(options.getOrDefault("in-flight", Integer.toString(inFlight)));
+      retries = Integer.parseInt(options.getOrDefault("retries", Integer.toString(retries)));
+      backoff = Long.parseLong(options.getOrDefault("backoff", Long.toString(backoff)));
+      repeat = Integer.parseInt(options.getOrDefault("repeat", Integer.toString(repeat)));
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid in-flight, retries, backoff or repeat. Please use command as following");
+      System.out.println(usage);
+      exit(1);
+    }
+    if (inFlight < 1 || retries < 0 || backoff < 0 || repeat < 1) {
+      System.err.println("Invalid in-flight, retries, backoff or repeat. Please use command as following");
+      System.out.println(usage);
+      exit(1);
+    }
+
+    List<File> requests = null;
+    try {
+      requests = findRequests(Paths.get(args[1]));
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      exit(1);
+    }
+    System.out.printf("Submitting %d contests to %s, %d at a time\n", requests.size(), args[0], inFlight);
+    RaireServiceClient client = new RaireServiceClient(URI.create(args[0]), inFlight, retries, backoff);
+    Map<File, List<Submission>> results = client.submitAll(requests, repeat);
+    reportLatencies(results);
+    long failed = results.values().stream().flatMap(List::stream).filter(s -> !s.succeeded()).count();
+    if (failed > 0) {
+      System.err.printf("%d submissions failed\n", failed);
+      exit(1);
+    }
+  }
+
+  /**
+   * The outcome of submitting one request: the HTTP status (or -1 if there was no response at all), how many
+   * times it was retried, and how long it took from the first attempt to the last response, including backoff.
+   */
+  public record Submission(File request, int status, int retries, long nanos, String error) {
+    public boolean succeeded() {
+      return status >= 200 && status < 300;
+    }
+  }
+
+  private final HttpClient httpClient;
+  private final URI endpoint;
+  private final int inFlight;
+  private final int retries;
+  private final long backoffMillis;
+
+  public RaireServiceClient(URI endpoint, int inFlight, int retries, long backoffMillis) {
+    this.httpClient = HttpClient.newBuilder()
+        .connectTimeout(DEADLINE_MARGIN)
+        .build();
+    this.endpoint = endpoint;
+    this.inFlight = inFlight;
+    this.retries = retries;
+    this.backoffMillis = backoffMillis;
+  }
+
+  /**
+   * The request files under path (or path itself, if it is a file), in path order.
+   * @throws IllegalArgumentException if path is an aggregated request, which the raire-service doesn't take.
+   */
+  public static List<File> findRequests(Path path) throws IOException {
+    if (!Files.isDirectory(path)) {
+      if (path.toString().endsWith(RaireServiceJsonWriter.AGGREGATED_SUFFIX)
+          || path.toString().endsWith(RaireServiceJsonWriter.AGGREGATED_SUFFIX + GzipSettings.SUFFIX)) {
+        throw new IllegalArgumentException(path + " is an aggregated request, which the raire-service doesn't take. "
+            + "Write it with --raire-service-format=expanded, or expand it with AggregatedContestRequest.toContestRequest().");
+      }
+      return List.of(path.toFile());
+    }
+    try (Stream<Path> files = Files.walk(path)) {
+      return files
+          .filter(file -> file.toString().endsWith(RaireServiceJsonWriter.SUFFIX)
+              || file.toString().endsWith(RaireServiceJsonWriter.SUFFIX + GzipSettings.SUFFIX))
+          .sorted()
+          .map(Path::toFile)
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Submit every request 'repeat' times, with at most inFlight outstanding at once. Every submission is made, even
+   * if some fail.
+   * @return the submissions of each request, in the order of requests.
+   */
+  public Map<File, List<Submission>> submitAll(List<File> requests, int repeat) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(inFlight);
+    try {
+      Map<File, List<Future<Submission>>> pending = new LinkedHashMap<>();
+      for (int r = 0; r < repeat; r++) {
+        for (File request : requests) {
+          pending.computeIfAbsent(request, k -> new ArrayList<>()).add(executor.submit(() -> submit(request)));
+        }
+      }
+
+      Map<File, List<Submission>> results = new LinkedHashMap<>();
+      for (Map.Entry<File, List<Future<Submission>>> request : pending.entrySet()) {
+        List<Submission> submissions = new ArrayList<>();
+        for (Future<Submission> submission : request.getValue()) {
+          try {
+            submissions.add(submission.get());
+          } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+          }
+        }
+        results.put(request.getKey(), submissions);
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Submit one request, retrying it if it times out, the connection fails or the service is unavailable. A request
+   * that can't be read is a failed submission, like any other.
+   */
+  public Submission submit(File request) throws IOException, InterruptedException {
+    Duration deadline;
+    try {
+      deadline = deadline(request);
+    } catch (IOException | UncheckedIOException e) {
+      System.err.printf("%s: %s\n", request.getName(), e);
+      return new Submission(request, -1, 0, 0, e.toString());
+    }
+    long start = System.nanoTime();
+    long wait = backoffMillis;
+    int attempt = 0;
+    while (true) {
+      String error;
+      try {
+        HttpResponse<String> response = send(HttpRequest.newBuilder(endpoint)
+            .timeout(deadline)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofInputStream(() -> open(request)))
+            .build(), responsePath(request), deadline);
+        if (response.statusCode() >= 200 && response.statusCode() < 300) {
+          return new Submission(request, response.statusCode(), attempt, System.nanoTime() - start, null);
+        }
+        error = "HTTP " + response.statusCode() + " " + response.body();
+        if (response.statusCode() != 503 || attempt == retries) {
+          System.err.printf("%s: %s\n", request.getName(), error);
+          return new Submission(request, response.statusCode(), attempt, System.nanoTime() - start, error);
+        }
+      } catch (HttpTimeoutException e) {
+        error = "timed out after " + deadline.toSeconds() + " s";
+      } catch (IOException | UncheckedIOException e) {
+        error = e.toString();
+      }
+      if (attempt == retries) {
+        System.err.printf("%s: %s, giving up\n", request.getName(), error);
+        return new Submission(request, -1, attempt, System.nanoTime() - start, error);
+      }
+      System.err.printf("%s: %s, retrying in %d ms\n", request.getName(), error, wait);
+      Thread.sleep(wait);
+      wait *= 2;
+      attempt++;
+    }
+  }
+
+  /**
+   * Send the request and wait for the whole response, body and all, for at most the deadline (the request's own
+   * timeout only covers the wait for the headers). A successful response is saved to responsePath, and the body
+   * is null; otherwise the body is the start of the error the service sent. The response is saved to a .part file
+   * first, so a response that doesn't arrive in time is abandoned without touching any earlier one. Each attempt has
+   * a .part file of its own, since with --repeat several submissions of the same request can be in flight at once,
+   * and is then moved into place atomically, so the response file is always one whole response.
+   */
+  private HttpResponse<String> send(HttpRequest httpRequest, Path responsePath, Duration deadline)
+      throws IOException, InterruptedException {
+    Path part = Files.createTempFile(responsePath.toAbsolutePath().getParent(), responsePath.getFileName() + ".",
+        ".part");
+    HttpResponse.BodyHandler<String> handler = info -> info.statusCode() >= 200 && info.statusCode() < 300
+        ? HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofFile(part,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), path -> null)
+        : HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(),
+            bytes -> new String(bytes, 0, Math.min(bytes.length, 200), UTF_8));
+    CompletableFuture<HttpResponse<String>> response = httpClient.sendAsync(httpRequest, handler);
+    try {
+      HttpResponse<String> result = response.get(deadline.toNanos(), TimeUnit.NANOSECONDS);
+      if (result.statusCode() >= 200 && result.statusCode() < 300) {
+        Files.move(part, responsePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return result;
+    } catch (TimeoutException e) {
+      response.cancel(true);
+      throw new HttpTimeoutException("timed out");
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      response.cancel(true);
+      throw e;
+    } finally {
+      Files.deleteIfExists(part);
+    }
+  }
+
+  // The request body, decompressed if it is gzipped.
+  private static InputStream open(File request) {
+    try {
+      InputStream in = Files.newInputStream(request.toPath());
+      return request.getName().endsWith(GzipSettings.SUFFIX) ? new GZIPInputStream(in, 1 << 16) : in;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Where the response to a request is saved: name-raire-service.json(.gz) -> name-raire-response.json.
+  private static Path responsePath(File request) {
+    String path = request.getPath();
+    if (path.endsWith(GzipSettings.SUFFIX)) {
+      path = path.substring(0, path.length() - GzipSettings.SUFFIX.length());
+    }
+    if (path.endsWith(RaireServiceJsonWriter.SUFFIX)) {
+      path = path.substring(0, path.length() - RaireServiceJsonWriter.SUFFIX.length());
+    }
+    return Paths.get(path + RESPONSE_SUFFIX);
+  }
+
+  /**
+   * How long to wait for a response: the request's timeProvisionForResult plus DEADLINE_MARGIN. This is one of the
+   * first fields, so only the start of the file is read.
+   */
+  private static Duration deadline(File request) throws IOException {
+    try (JsonParser parser = new JsonFactory().createParser(open(request))) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException(request + " is not a raire-service request");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if (field.equals("timeProvisionForResult")) {
+          return value == JsonToken.VALUE_NULL ? DEFAULT_DEADLINE
+              : Duration.ofMillis((long) (parser.getValueAsDouble() * 1000)).plus(DEADLINE_MARGIN);
+        }
+        parser.skipChildren();
+      }
+    }
+    return DEFAULT_DEADLINE;
+  }
+
+  private static void reportLatencies(Map<File, List<Submission>> results) {
+    List<Long> all = new ArrayList<>();
+    for (Map.Entry<File, List<Submission>> request : results.entrySet()) {
+      List<Submission> submissions = request.getValue();
+      long[] nanos = submissions.stream().filter(Submission::succeeded).mapToLong(Submission::nanos).toArray();
+      Arrays.stream(nanos).forEach(all::add);
+      reportLatency(request.getKey().getName(), nanos, submissions.size(),
+          submissions.stream().mapToInt(Submission::retries).sum());
+    }
+    reportLatency("Total (" + results.size() + " contests)", all.stream().mapToLong(Long::longValue).toArray(),
+        results.values().stream().mapToInt(List::size).sum(),
+        results.values().stream().flatMap(List::stream).mapToInt(Submission::retries).sum());
+  }
+
+  private static void reportLatency(String name, long[] nanos, int submissions, int retries) {
+    Arrays.sort(nanos);
+    System.out.printf("%s: %d/%d succeeded, %d retries, latency p50 %.3f s, p90 %.3f s, p99 %.3f s, max %.3f s\n",
+        name, nanos.length, submissions, retries, percentile(nanos, 50), percentile(nanos, 90),
+        percentile(nanos, 99), percentile(nanos, 100));
+  }
+
+  // The nearest-rank percentile of the sorted latencies, in seconds, or NaN if there are none.
+  private static double percentile(long[] sortedNanos, int percent) {
+    if (sortedNanos.length == 0) {
+      return Double.NaN;
+    }
+    int rank = (int) Math.ceil(percent / 100.0 * sortedNanos.length);
+    return sortedNanos[Math.max(0, rank - 1)] / 1e9;
+  }
+}
@@ -0,0 +1,144 @@
+package au.org.democracydevelopers.utils;
+
+import au.org.democracydevelopers.utils.Sha256Sums.Sha256SumOutputStream;
+import au.org.democracydevelopers.utils.domain.raireservice.AggregatedContestRequest;
+import au.org.democracydevelopers.utils.domain.stv.BallotTable;
+import au.org.democracydevelopers.utils.domain.stv.Candidate;
+import au.org.democracydevelopers.utils.domain.stv.Metadata;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Writes a contest as the JSON ContestRequest the raire-service takes, in which every vote is a list of candidate
+ * names. A million-ballot contest has a million votes, so rather than expanding the table into a ContestRequest and
+ * serialising that, the votes are streamed to the file one at a time with a JsonGenerator. Each distinct ballot is
+ * rendered once and the same text written for each of its copies, so memory use does not depend on the number of
+ * ballots. The output is the same as ObjectMapper.writeValueAsString on the equivalent ContestRequest.
+ * Alternatively it writes an AggregatedContestRequest, with each distinct ranking once, as candidate indices, and
+ * the number of ballots that cast it.
+ */
+public class RaireServiceJsonWriter {
+
+  public static final String SUFFIX = "-raire-service.json";
+
+  // Aggregated requests get their own suffix: the raire-service doesn't take them, so RaireServiceClient skips them.
+  public static final String AGGREGATED_SUFFIX = "-raire-service-aggregated.json";
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  // The time allowed to the raire-service to compute the assertions, or null to leave it to the service.
+  private final Integer timeProvisionForResult;
+  // Write an AggregatedContestRequest rather than a ContestRequest.
+  private final boolean aggregated;
+
+  public RaireServiceJsonWriter(Integer timeProvisionForResult, boolean aggregated) {
+    this.timeProvisionForResult = timeProvisionForResult;
+    this.aggregated = aggregated;
+  }
+
+  /**
+   * Read the settings from command-line options: --raire-service or --raire-service=seconds, and
+   * --raire-service-format=expanded (the default) or aggregated.
+   * @return null if there is no --raire-service option.
+   * @throws IllegalArgumentException if the time is not a positive number, or the format is not one of those.
+   */
+  public static RaireServiceJsonWriter fromOptions(Map<String, String> options) {
+    if (!options.containsKey("raire-service")) {
+      return null;
+    }
+    String format = options.getOrDefault("raire-service-format", "expanded");
+    if (!format.equals("expanded") && !format.equals("aggregated")) {
+      throw new IllegalArgumentException("Unknown raire-service format: " + format);
+    }
+    String time = options.get("raire-service");
+    Integer seconds = time.isEmpty() ? null : Integer.valueOf(time);
+    if (seconds != null && seconds <= 0) {
+      throw new NumberFormatException("raire-service time must be positive");
+    }
+    return new RaireServiceJsonWriter(seconds, format.equals("aggregated"));
+  }
+
+  // The suffix for the files this writes.
+  public String getSuffix() {
+    return aggregated ? AGGREGATED_SUFFIX : SUFFIX;
+  }
+
+  /**
+   * Write the contest to path (gzipped if gzip is not null), with a .sha256sum like the other outputs. If the contest
+   * has been split, pass all its partitions in order: their votes are concatenated, in the same order as the CSVs.
+   * (Aggregated, the partitions' tables are merged, so a ranking cast in several partitions appears once.)
+   * @return the number of ballots, i.e. the totalAuditableBallots.
+   */
+  public long write(String path, Metadata metadata, List<BallotTable> partitions, GzipSettings gzip) throws Exception {
+    List<String> candidates = metadata.getCandidates().stream()
+        .map(Candidate::getName)
+        .collect(Collectors.toList());
+    if (aggregated) {
+      BallotTable merged = partitions.size() == 1 ? partitions.get(0) : merge(partitions);
+      try (Sha256SumOutputStream hashed = Sha256Sums.create(path, gzip);
+           JsonGenerator out = objectMapper.getFactory().createGenerator(hashed, JsonEncoding.UTF8)) {
+        objectMapper.writeValue(out, AggregatedContestRequest.fromBallotTable(metadata.getName().getName(),
+            timeProvisionForResult, candidates, merged));
+        out.flush();
+        hashed.finish();
+      }
+      return merged.getTotalCount();
+    }
+
+    long totalAuditableBallots = 0;
+    for (BallotTable votes : partitions) {
+      totalAuditableBallots += votes.getTotalCount();
+    }
+
+    try (Sha256SumOutputStream hashed = Sha256Sums.create(path, gzip);
+         JsonGenerator out = objectMapper.getFactory().createGenerator(hashed, JsonEncoding.UTF8)) {
+      // The same fields, in the same order, as ContestRequest.
+      out.writeStartObject();
+      out.writeStringField("contestName", metadata.getName().getName());
+      out.writeNumberField("totalAuditableBallots", totalAuditableBallots);
+      out.writeFieldName("timeProvisionForResult");
+      if (timeProvisionForResult == null) {
+        out.writeNull();
+      } else {
+        out.writeNumber(timeProvisionForResult);
+      }
+      out.writeFieldName("candidates");
+      out.writeStartArray();
+      for (String candidate : candidates) {
+        out.writeString(candidate);
+      }
+      out.writeEndArray();
+
+      out.writeFieldName("votes");
+      out.writeStartArray();
+      for (BallotTable votes : partitions) {
+        for (int b = 0; b < votes.size(); b++) {
+          String vote = objectMapper.writeValueAsString(votes.getBallot(b).stream().map(candidates::get).toList());
+          for (int i = 0; i < votes.getCount(b); i++) {
+            out.writeRawValue(vote);
+          }
+        }
+      }
+      out.writeEndArray();
+      out.writeEndObject();
+      out.flush();
+      hashed.finish();
+    }
+    return totalAuditableBallots;
+  }
+
+  private static BallotTable merge(List<BallotTable> partitions) {
+    BallotTable merged = new BallotTable();
+    for (BallotTable votes : partitions) {
+      for (int b = 0; b < votes.size(); b++) {
+        int[] ballot = votes.getPreferences(b);
+        merged.add(ballot, ballot.length, votes.getCount(b));
+      }
+    }
+    return merged;
+  }
+}
@@ -0,0 +1,252 @@
+package au.org.democracydevelopers.utils;
+
+import static au.org.democracydevelopers.utils.StvReadingFunctionUtils.findFilesMatching;
+import static java.lang.System.exit;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * SHA-256 sidecar files, in exactly the format sha256sum produces ("hash  path", with two spaces), as needed
+ * for colorado-rla uploads. The translators write their output through create(), which hashes the bytes as
+ * they go past and writes path.sha256sum when the file is closed, so the output never has to be read back. The
+ * sidecar is only written if the writer called finish() first: an output closed without it (say by
+ * try-with-resources after an exception) is incomplete, so it is deleted rather than given a sidecar.
+ * If the output is gzipped, the hash is still of the uncompressed bytes, and the sidecar still names the uncompressed
+ * file, so it matches what colorado-rla sees after decompression.
+ * Running this class checks existing sidecars instead (decompressing path.gz if path itself isn't there):
+ * mvn exec:java -Dexec.mainClass="au.org.democracydevelopers.utils.Sha256Sums" -Dexec.args="directory [Optional] threads"
+ */
+public class Sha256Sums {
+
+  public static final String SUFFIX = ".sha256sum";
+
+  private static final String usage = "Usage: mvn exec:java -Dexec.mainClass=\"au.org.democracydevelopers.utils.Sha256Sums\" -Dexec.args=\"directory [Optional] threads\"";
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("Invalid number of arguments. Please use command as following");
+      System.out.println(usage);
+      exit(1);
+    }
+    int threads = Runtime.getRuntime().availableProcessors();
+    if (args.length == 2) {
+      try {
+        threads = Integer.parseInt(args[1]);
+      } catch (NumberFormatException e) {
+        System.err.println("Invalid number of threads. Please use command as following");
+        System.out.println(usage);
+        exit(1);
+      }
+    }
+    int failures = verifyAll(args[0], threads);
+    exit(failures == 0 ? 0 : 1);
+  }
+
+  /**
+   * Open path for writing. Everything written is also hashed, and path.sha256sum is written on close, if
+   * finish() has been called.
+   */
+  public static Sha256SumOutputStream create(String path) throws IOException {
+    return new Sha256SumOutputStream(path, path, new FileOutputStream(path, false));
+  }
+
+  /**
+   * As above, but if gzip is not null, the file written is path.gz, compressed with those settings. The sidecar is
+   * still path.sha256sum, with the hash of the uncompressed bytes.
+   */
+  public static Sha256SumOutputStream create(String path, GzipSettings gzip) throws IOException {
+    if (gzip == null) {
+      return create(path);
+    }
+    OutputStream file = new FileOutputStream(path + GzipSettings.SUFFIX, false);
+    try {
+      return new Sha256SumOutputStream(path, path + GzipSettings.SUFFIX, new GZIPOutputStream(file, gzip.getBlockSize()) {
+        {
+          def.setLevel(gzip.getLevel());
+        }
+      });
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Write the sidecar for a file that was written some other way (e.g. in parallel), given a digest (from
+   * newDigest()) that has been fed its bytes in order, just as create() would have.
+   */
+  public static void writeSidecar(String path, MessageDigest digest) throws IOException {
+    writeSidecar(path, HexFormat.of().formatHex(digest.digest()));
+  }
+
+  /**
+   * Check every .sha256sum file under directory, several at a time.
+   * @return the number of sidecars that didn't match (or couldn't be checked).
+   */
+  public static int verifyAll(String directory, int threads) throws InterruptedException {
+    List<File> sidecars = new ArrayList<>();
+    findFilesMatching(Paths.get(directory), "*" + SUFFIX).forEachRemaining(sidecars::add);
+    sidecars.sort(Comparator.comparing(File::getPath));
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sidecars.size())));
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (File sidecar : sidecars) {
+        results.add(executor.submit(() -> verify(sidecar.toPath())));
+      }
+      int failures = 0;
+      for (int i = 0; i < sidecars.size(); i++) {
+        boolean ok;
+        try {
+          ok = results.get(i).get();
+        } catch (ExecutionException e) {
+          System.out.println(sidecars.get(i) + ": " + e.getCause().getMessage());
+          ok = false;
+        }
+        if (!ok) {
+          failures++;
+        }
+      }
+      System.out.printf("Checked %d sidecars: %d OK, %d FAILED\n", sidecars.size(), sidecars.size() - failures, failures);
+      return failures;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Check one sidecar. The path inside it is usually relative to wherever the file was generated from, so if it
+   * doesn't exist we look for a file of the same name next to the sidecar.
+   */
+  public static boolean verify(Path sidecar) throws IOException {
+    String line = Files.readString(sidecar, UTF_8).trim();
+    int separator = line.indexOf("  ");
+    if (separator != 64) {
+      throw new IOException("Not in sha256sum format");
+    }
+    String expected = line.substring(0, separator);
+    Path target = Paths.get(line.substring(separator + 2));
+    if (!Files.exists(target)) {
+      target = sidecar.resolveSibling(target.getFileName());
+    }
+    boolean gzipped = false;
+    if (!Files.exists(target) && Files.exists(Paths.get(target + GzipSettings.SUFFIX))) {
+      target = Paths.get(target + GzipSettings.SUFFIX);
+      gzipped = true;
+    }
+
+    boolean ok = expected.equalsIgnoreCase(hash(target, gzipped));
+    System.out.println(target + ": " + (ok ? "OK" : "FAILED"));
+    return ok;
+  }
+
+  // The hex SHA-256 of the file, or of its decompressed contents if gzipped.
+  private static String hash(Path file, boolean gzipped) throws IOException {
+    MessageDigest digest = newDigest();
+    byte[] buffer = new byte[1 << 16];
+    try (InputStream in = gzipped ? new GZIPInputStream(Files.newInputStream(file), 1 << 16) : Files.newInputStream(file)) {
+      for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static void writeSidecar(String path, String hash) throws IOException {
+    Files.writeString(Paths.get(path + SUFFIX), hash + "  " + path + "\n", UTF_8);
+  }
+
+  // A SHA-256 digest, as used for the sidecars.
+  public static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * The stream create() returns. Call finish() once everything has been written; anything still buffered on
+   * the way in (by a writer wrapped around this) may be written after it, when the stream is closed.
+   */
+  public static class Sha256SumOutputStream extends FilterOutputStream {
+    private final String path;
+    // The file actually written: path, or path.gz.
+    private final String file;
+    private final MessageDigest digest = newDigest();
+    private boolean finished = false;
+    private boolean closed = false;
+
+    private Sha256SumOutputStream(String path, String file, OutputStream out) {
+      super(out);
+      this.path = path;
+      this.file = file;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      digest.update((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      digest.update(b, off, len);
+    }
+
+    /**
+     * Everything has been written successfully, so the sidecar should be written on close.
+     */
+    public void finish() {
+      finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        super.close();
+      } catch (IOException e) {
+        discard();
+        throw e;
+      }
+      if (finished) {
+        writeSidecar(path, HexFormat.of().formatHex(digest.digest()));
+      } else {
+        discard();
+      }
+    }
+
+    // Delete the incomplete output, and any sidecar left over from an earlier run, which would no longer match.
+    private void discard() throws IOException {
+      Files.deleteIfExists(Paths.get(file));
+      Files.deleteIfExists(Paths.get(path + SUFFIX));
+    }
+  }
+}
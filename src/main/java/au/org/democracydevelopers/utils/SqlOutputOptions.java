@@ -0,0 +1,26 @@
+package au.org.democracydevelopers.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * How StvToSqlTranslatorUtil writes its output. The defaults produce the same files as it always has: bulk
+ * INSERTs, with the whole contest in one statement per table and no explicit transactions.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class SqlOutputOptions {
+  // Bulk mode puts the cvr_contest_info rows in their own file and many rows in each INSERT statement.
+  // Otherwise every row is its own INSERT, all in the one file.
+  private boolean doBulk = true;
+  // In bulk mode, the number of rows per INSERT statement, or 0 for all of them in one statement.
+  private int rowsPerInsert = 0;
+  // Wrap every this many INSERT statements in BEGIN; ... COMMIT;, or 0 for no explicit transactions.
+  private int commitEvery = 0;
+  // If not null, write the rows as COPY data in this format instead of INSERT statements.
+  private PgCopyWriter.Format copyFormat = null;
+  // If not null, gzip the INSERT or COPY data files (but not the scripts that load COPY data).
+  private GzipSettings gzip = null;
+}
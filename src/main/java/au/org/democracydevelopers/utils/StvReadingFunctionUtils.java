@@ -20,58 +20,29 @@ raire-service. If not, see <https://www.gnu.org/licenses/>.
 
 package au.org.democracydevelopers.utils;
 
+import au.org.democracydevelopers.utils.domain.stv.BallotTable;
 import au.org.democracydevelopers.utils.domain.stv.Btl;
 import au.org.democracydevelopers.utils.domain.stv.ElectionData;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 
 public class StvReadingFunctionUtils {
 
-  public static Map<List<Integer>, Integer> getCvrBitTranslatedVotesMap(int numberOfCandidates,
-      Map<List<Integer>, Integer> sanitisedMap) {
-    Map<List<Integer>, Integer> buildVoteMap = new LinkedHashMap<>();
-    for (Entry<List<Integer>, Integer> entry : sanitisedMap.entrySet()) {
-      List<Integer> preferenceBitList = new ArrayList<>(numberOfCandidates * numberOfCandidates);
-      initialize(preferenceBitList, numberOfCandidates);
-      for (int i = 0; i < entry.getKey().size(); i++) {
-        // if candidate c is at index i, this tells us to put a 1 in the c'th column of the i-th preference group
-        preferenceBitList.set(i * numberOfCandidates + entry.getKey().get(i), 1);
-      }
-      buildVoteMap.put(preferenceBitList, entry.getValue());
-    }
-    return buildVoteMap;
-  }
-
-  public static Map<List<Integer>, Integer> getSanitisedVotesCount(ElectionData electionData) {
-    Map<List<Integer>, Integer> sanitisedMap = new HashMap<>();
-    int totalVotes = 0;
+  public static BallotTable getSanitisedVotesCount(ElectionData electionData) {
+    BallotTable sanitisedTable = new BallotTable();
     for (Btl entry : electionData.getBtl()) {
-      totalVotes += entry.getCount();
-      if (sanitisedMap.containsKey(entry.getPreferences())) {
-        sanitisedMap.put(entry.getPreferences(),
-            sanitisedMap.get(entry.getPreferences()) + entry.getCount());
-      } else {
-        sanitisedMap.put(entry.getPreferences(), entry.getCount());
-      }
-    }
-    System.out.println("Total Number of Votes: " + totalVotes);
-    return sanitisedMap;
-  }
-
-  private static void initialize(List<Integer> preferenceBitList, int numberOfCandidates) {
-    for (int i = 0; i < numberOfCandidates * numberOfCandidates; i++) {
-      preferenceBitList.add(0);
+      sanitisedTable.add(entry.getPreferences(), entry.getCount());
     }
+    System.out.println("Total Number of Votes: " + sanitisedTable.getTotalCount());
+    return sanitisedTable;
   }
 
   // Copied from https://www.baeldung.com/java-recursive-search-directory-extension-match
@@ -79,12 +50,38 @@ public class StvReadingFunctionUtils {
     if (!extension.startsWith(".")) {
       extension = "." + extension;
     }
+    return findFilesMatching(startPath, "*" + extension);
+  }
+
+  // As above, but for any wildcard pattern, e.g. "*Mayoral.json". The raire-service .json files the CVR translator
+  // writes are skipped, so that they aren't read back in as contests next time.
+  public static Iterator<File> findFilesMatching(Path startPath, String pattern) {
     return FileUtils.iterateFiles(
         startPath.toFile(),
-        WildcardFileFilter.builder().setWildcards("*" + extension).get(),
+        FileFilterUtils.and(WildcardFileFilter.builder().setWildcards(pattern).get(),
+            FileFilterUtils.notFileFilter(FileFilterUtils.or(
+                FileFilterUtils.suffixFileFilter(RaireServiceJsonWriter.SUFFIX),
+                FileFilterUtils.suffixFileFilter(RaireServiceJsonWriter.AGGREGATED_SUFFIX)))),
         TrueFileFilter.INSTANCE);
   }
 
+  /**
+   * Split a command line into options, which look like --name=value (or just --name) and can go anywhere, and
+   * positional arguments, which are returned in order.
+   */
+  public static String[] parseOptions(String[] commandLine, Map<String, String> options) {
+    List<String> positional = new ArrayList<>();
+    for (String arg : commandLine) {
+      if (arg.startsWith("--")) {
+        int equals = arg.indexOf('=');
+        options.put(equals < 0 ? arg.substring(2) : arg.substring(2, equals), equals < 0 ? "" : arg.substring(equals + 1));
+      } else {
+        positional.add(arg);
+      }
+    }
+    return positional.toArray(new String[0]);
+  }
+
   // For escaping the single quotes in names like O'Brien, which otherwise confuse the sql reader.
   public static String escapeChars(String in) {
     // Escape once for Java, once for regexp.
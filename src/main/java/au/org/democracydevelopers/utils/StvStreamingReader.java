@@ -0,0 +1,200 @@
+package au.org.democracydevelopers.utils;
+
+import au.org.democracydevelopers.utils.domain.stv.BallotTable;
+import au.org.democracydevelopers.utils.domain.stv.BtlType;
+import au.org.democracydevelopers.utils.domain.stv.Metadata;
+import au.org.democracydevelopers.utils.domain.stv.SanitisedElectionData;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads an STV .json file token by token rather than deserialising it into an ElectionData.
+ * The metadata and btl_types are read as normal, the atl list is skipped without being built, and
+ * each btl entry is handed straight to a BtlConsumer as it is read. This means that memory use
+ * depends on what the consumer keeps (usually one entry per distinct ballot), not on the size of
+ * the file.
+ */
+public class StvStreamingReader {
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private static final TypeReference<List<BtlType>> BTL_TYPES = new TypeReference<>() {};
+
+  /**
+   * Receives each btl entry as it is read. The preferences array is reused between calls, so
+   * implementations must copy anything they want to keep.
+   */
+  public interface BtlConsumer {
+    void accept(int count, int[] preferences, int length);
+  }
+
+  /**
+   * Read the file, passing every btl entry to the consumer.
+   * @return everything except the votes, which are left null.
+   */
+  public static SanitisedElectionData read(File source, BtlConsumer consumer) throws IOException {
+    SanitisedElectionData result = new SanitisedElectionData();
+    try (JsonParser parser = objectMapper.createParser(source)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Expected a json object at the start of " + source);
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        switch (field) {
+          case "metadata" -> result.setMetadata(parser.readValueAs(Metadata.class));
+          case "btl_types" -> result.setBtlTypes(parser.readValueAs(BTL_TYPES));
+          case "informal" -> result.setInformal(parser.getIntValue());
+          case "atl" -> result.setAtlCount(skipArray(parser));
+          case "btl" -> readBtl(parser, consumer, result);
+          default -> parser.skipChildren();
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Read the file, aggregating the btl entries into a table of distinct ballots and counts, in the
+   * same way as StvReadingFunctionUtils.getSanitisedVotesCount.
+   */
+  public static SanitisedElectionData readSanitised(File source) throws IOException {
+    BallotTable sanitisedTable = new BallotTable();
+    SanitisedElectionData result = read(source,
+        (count, preferences, length) -> sanitisedTable.add(preferences, length, count));
+    result.setVotes(sanitisedTable);
+    System.out.println("Total Number of Votes: " + result.getBallotCount());
+    return result;
+  }
+
+  /**
+   * Read the file twice, first to count the ballots and then to aggregate them into n partitions.
+   * The partitions are exactly the ones that ElectionData.split(n) would produce, but each is
+   * aggregated as it is filled, so the btl list is never held in memory.
+   */
+  public static List<SanitisedElectionData> readSanitisedPartitions(File source, int n) throws IOException {
+    if (n == 1) {
+      return List.of(readSanitised(source));
+    }
+
+    final int c = read(source, (count, preferences, length) -> { }).getBallotCount();
+    if (n < 1 || c < n) {
+      throw new RuntimeException("Cannot split " + c + " ballots into " + n + " partitions");
+    }
+
+    PartitioningConsumer partitioner = new PartitioningConsumer(c, n);
+    SanitisedElectionData header = read(source, partitioner);
+    for (SanitisedElectionData partition : partitioner.result) {
+      partition.setMetadata(header.getMetadata());
+      partition.setBtlTypes(header.getBtlTypes());
+      System.out.println("Total Number of Votes: " + partition.getBallotCount());
+    }
+    return partitioner.result;
+  }
+
+  /*
+   * Mirrors the arithmetic in ElectionData.split: the first c mod n partitions get c / n + 1 ballots
+   * and the rest get c / n. A btl entry that overflows a partition is divided between it and the next.
+   */
+  private static class PartitioningConsumer implements BtlConsumer {
+    private final int c;
+    private final int n;
+    private final List<SanitisedElectionData> result = new ArrayList<>();
+    private int target;
+    private int ballotsInPartition = 0;
+    private int btlInPartition = 0;
+    private int currentPartition = 0;
+    private BallotTable partitionVotes = new BallotTable();
+
+    PartitioningConsumer(int c, int n) {
+      this.c = c;
+      this.n = n;
+      target = c / n + (c % n == 0 ? 0 : 1);
+    }
+
+    @Override
+    public void accept(int count, int[] preferences, int length) {
+      int setCount = count;
+
+      // This set fills or overflows this partition. Take enough votes to fill the partition, and start a new partition.
+      while (setCount >= target - ballotsInPartition) {
+        partitionVotes.add(preferences, length, target - ballotsInPartition);
+        result.add(new SanitisedElectionData(null, null, 0, 0, btlInPartition + 1, target, partitionVotes));
+        setCount -= target - ballotsInPartition;
+
+        // Start a new partition.
+        partitionVotes = new BallotTable();
+        ballotsInPartition = 0;
+        btlInPartition = 0;
+        currentPartition++;
+        target = c / n + (c % n > currentPartition ? 1 : 0);
+      }
+
+      // (The rest of) this set doesn't fill up this partition. Add it all to the current partition.
+      if (setCount < target - ballotsInPartition) {
+        partitionVotes.add(preferences, length, setCount);
+        ballotsInPartition += setCount;
+        btlInPartition++;
+      }
+    }
+  }
+
+  // Reads the btl array, whose entries look like {"candidates": [0, 3, 4], "n": 3} (in either order).
+  private static void readBtl(JsonParser parser, BtlConsumer consumer, SanitisedElectionData result)
+      throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      throw new IOException("Expected btl to be an array at " + parser.getCurrentLocation());
+    }
+    int[] preferences = new int[16];
+    int btlCount = 0;
+    int ballotCount = 0;
+
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      int count = 0;
+      int length = 0;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if (field.equals("n")) {
+          count = parser.getIntValue();
+        } else if (field.equals("candidates")) {
+          while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (length == preferences.length) {
+              preferences = Arrays.copyOf(preferences, 2 * length);
+            }
+            preferences[length++] = parser.getIntValue();
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+      consumer.accept(count, preferences, length);
+      btlCount++;
+      ballotCount += count;
+    }
+
+    result.setBtlCount(btlCount);
+    result.setBallotCount(ballotCount);
+  }
+
+  // Skips an array without building it, returning the number of entries.
+  private static int skipArray(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return 0;
+    }
+    int entries = 0;
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      parser.skipChildren();
+      entries++;
+    }
+    return entries;
+  }
+}
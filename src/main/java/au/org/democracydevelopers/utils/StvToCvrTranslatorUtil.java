@@ -1,21 +1,29 @@
 package au.org.democracydevelopers.utils;
 
-import static au.org.democracydevelopers.utils.StvReadingFunctionUtils.getCvrBitTranslatedVotesMap;
-import static au.org.democracydevelopers.utils.StvReadingFunctionUtils.getSanitisedVotesCount;
+import static au.org.democracydevelopers.utils.StvReadingFunctionUtils.findFilesMatching;
+import static au.org.democracydevelopers.utils.StvReadingFunctionUtils.parseOptions;
 import static java.lang.System.exit;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
-import au.org.democracydevelopers.utils.domain.cvr.Cvr;
-import au.org.democracydevelopers.utils.domain.raireservice.ContestRequest;
+import au.org.democracydevelopers.utils.Sha256Sums.Sha256SumOutputStream;
+import au.org.democracydevelopers.utils.domain.stv.BallotTable;
 import au.org.democracydevelopers.utils.domain.stv.Candidate;
-import au.org.democracydevelopers.utils.domain.stv.ElectionData;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import au.org.democracydevelopers.utils.domain.stv.Metadata;
+import au.org.democracydevelopers.utils.domain.stv.SanitisedElectionData;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -26,14 +34,56 @@ import org.apache.commons.lang3.StringUtils;
  * used for the main demo was generated with command line parameters
  * "src/main/resources/test-data/Byron_Mayoral.json" "src/main/resources/test-data/split-Byron/Byron" 64
  * An optional parameter tells it how many files to split it into - default is 1.
+ * A further optional parameter sets how many partitions are written concurrently - default is the number of
+ * available processors. The partitions are independent, so the output is identical whatever this is set to.
+ * If the first parameter is a directory, every .json file in it (or every file matching the optional second
+ * parameter, e.g. "*Mayoral.json") is translated in this one JVM, several at a time (optional third parameter,
+ * default one per processor). Each sourceFile.json is written with destinationFile sourceFile.csv, so it produces
+ * sourceFile.csv-1.csv and sourceFile.csv-1-manifest.csv (and sourceFile.csv-raire-service.json with --raire-service).
+ * In either case, --gzip (or --gzip=level) writes the CSVs and manifests gzipped, as .csv.gz, and --gzip-block=bytes
+ * sets how much compressed output is written at a time. The .sha256sum files are of the uncompressed CSVs.
+ * --raire-service (or --raire-service=seconds, the time allowed to compute the assertions) also writes the whole
+ * contest as a request for the raire-service, in destinationFile-raire-service.json. See RaireServiceJsonWriter.
+ * --raire-service-format=aggregated writes each distinct ranking once, with its count, instead of every ballot, in
+ * destinationFile-raire-service-aggregated.json.
  */
 public class StvToCvrTranslatorUtil {
 
-  private static final ObjectMapper objectMapper = new ObjectMapper();
-
   private static final int MAX_RECORD_PER_BATCH = 78;
-  private static final String usage = "Usage: mvn clean compile exec:java -Dexec.mainClass=\"au.org.democracydevelopers.utils.StvToCvrTranslatorUtil\" -Dexec.args=\"sourceFile.json destinationFile [Optional] split\"";
-  public static void main(String[] args) throws Exception {
+  private static final String PRECINCT_PORTION = "Precinct 1";
+  private static final String BALLOT_TYPE = "Ballot 1 - Type 1";
+  private static final String usage = "Usage: mvn clean compile exec:java -Dexec.mainClass=\"au.org.democracydevelopers.utils.StvToCvrTranslatorUtil\" -Dexec.args=\"sourceFile.json destinationFile [Optional] split [Optional] threads [Optional] --gzip[=level] [--gzip-block=bytes] [Optional] --raire-service[=seconds] [--raire-service-format=expanded|aggregated]\"\n"
+      + "Alternative arguments for whole-directory run: -Dexec.args=\"sourceDirectory [Optional] pattern [Optional] threads [Optional] --gzip[=level] [--gzip-block=bytes] [Optional] --raire-service[=seconds] [--raire-service-format=expanded|aggregated]\"";
+  public static void main(String[] commandLine) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    String[] args = parseOptions(commandLine, options);
+    GzipSettings gzip = null;
+    try {
+      gzip = GzipSettings.fromOptions(options);
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid gzip level or block size. Please use command as following");
+      System.out.println(usage);
+      exit(1);
+    }
+    RaireServiceJsonWriter raireService = null;
+    try {
+      raireService = RaireServiceJsonWriter.fromOptions(options);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Invalid raire-service time allowed or format. Please use command as following");
+      System.out.println(usage);
+      exit(1);
+    }
+
+    if (args.length >= 1 && new File(args[0]).isDirectory()) {
+      String pattern = args.length >= 2 ? args[1] : "*.json";
+      int threads = Runtime.getRuntime().availableProcessors();
+      if (args.length >= 3) {
+        threads = parsePositive(args[2], "number of threads", usage);
+      }
+      translateDirectory(args[0], pattern, threads, gzip, raireService);
+      return;
+    }
+
     if (args.length < 2) {
       System.err.println("Invalid number of arguments. Please use command as following");
       System.out.println(usage);
@@ -42,89 +92,194 @@ public class StvToCvrTranslatorUtil {
 
     // Default if no split is specified is to put them all in one file.
     int split = 1;
+    // Default if no thread count is specified is one per processor.
+    int threads = Runtime.getRuntime().availableProcessors();
 
-    if (args.length == 3) {
-      try {
-        split = Integer.parseInt(args[2]);
-      } catch (Exception e) {
-        System.err.println("Invalid time allowed. Please use command as following");
-        System.out.println(usage);
-      }
+    if (args.length >= 3) {
+      split = parsePositive(args[2], "number of partitions", usage);
+    }
+
+    if (args.length >= 4) {
+      threads = parsePositive(args[3], "number of threads", usage);
     }
 
     String sourceFilePath = args[0];
     String destinationFilePath = args[1];
-    translate(sourceFilePath, destinationFilePath, split);
+    translate(sourceFilePath, destinationFilePath, split, threads, gzip, raireService);
     System.out.println("translated CVR File is generated at: " + destinationFilePath);
   }
 
+  // Parse a count of at least 1 from the command line, or print usage and exit.
+  private static int parsePositive(String arg, String name, String usage) {
+    try {
+      int value = Integer.parseInt(arg);
+      if (value >= 1) {
+        return value;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    System.err.println("Invalid " + name + " " + arg + ": must be at least 1. Please use command as following");
+    System.out.println(usage);
+    exit(1);
+    return 0;
+  }
+
   public static void translate(String sourceFilePath, String destinationFilePath, int split) throws Exception {
-    ElectionData rawElectionData = objectMapper.readValue(
-        new File(sourceFilePath),
-        ElectionData.class);
-    System.out.println("Read electionData");
-    List<ElectionData> splitElectionData = rawElectionData.split(split);
-    for (int i = 0; i < splitElectionData.size(); i++) {
-      ElectionData electionData = splitElectionData.get(i);
-
-    List<Cvr> cvrs = translateToCvr(electionData);
-    System.out.printf("Building CSV %d\n", i+1);
-    buildCsv(cvrs, electionData, destinationFilePath + "-" + (i+1) + ".csv");
-    System.out.printf("Successfully Finished building Csv %d\n", i+1);
-    buildManifest(cvrs.size(), "TestCounty-" + (i+1), destinationFilePath + "-" + (i+1) + "-manifest.csv");
-    System.out.printf("Successfully Finished building manifest %d\n", i+1);
+    translate(sourceFilePath, destinationFilePath, split, 1);
+  }
+
+  /**
+   * Translate every file under sourceDirectory matching the pattern (e.g. "*Mayoral.json"), up to 'threads' at a
+   * time, reporting the throughput for each file and overall. Doing this in one JVM means paying for startup and
+   * JIT warm-up once, rather than once per contest as when running the single-file version in a loop.
+   * Each name.json is translated to the destination name.csv, as convertAlljsonToCSV.sh always did, so the
+   * outputs are name.csv-1.csv and name.csv-1-manifest.csv.
+   */
+  public static void translateDirectory(String sourceDirectory, String pattern, int threads) throws Exception {
+    translateDirectory(sourceDirectory, pattern, threads, null);
+  }
+
+  // As above, gzipping the output if gzip is not null.
+  public static void translateDirectory(String sourceDirectory, String pattern, int threads, GzipSettings gzip)
+      throws Exception {
+    translateDirectory(sourceDirectory, pattern, threads, gzip, null);
+  }
+
+  // As above, also writing each contest's raire-service request if raireService is not null.
+  public static void translateDirectory(String sourceDirectory, String pattern, int threads, GzipSettings gzip,
+      RaireServiceJsonWriter raireService) throws Exception {
+    List<File> sourceFiles = new ArrayList<>();
+    findFilesMatching(Paths.get(sourceDirectory), pattern).forEachRemaining(sourceFiles::add);
+    sourceFiles.sort(Comparator.comparing(File::getPath));
+    System.out.printf("Translating %d files matching %s in %s\n", sourceFiles.size(), pattern, sourceDirectory);
+
+    long start = System.nanoTime();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sourceFiles.size())));
+    try {
+      List<Future<Long>> files = new ArrayList<>();
+      for (File sourceFile : sourceFiles) {
+        files.add(executor.submit(() -> {
+          long fileStart = System.nanoTime();
+          long ballots = translate(sourceFile.getPath(), FilenameUtils.removeExtension(sourceFile.getPath()) + ".csv", 1, 1, gzip,
+              raireService);
+          reportThroughput(sourceFile.getName(), ballots, System.nanoTime() - fileStart);
+          return ballots;
+        }));
+      }
+
+      long totalBallots = 0;
+      for (Future<Long> file : files) {
+        try {
+          totalBallots += file.get();
+        } catch (ExecutionException e) {
+          throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+      }
+      reportThroughput("Total (" + sourceFiles.size() + " files)", totalBallots, System.nanoTime() - start);
+    } finally {
+      executor.shutdownNow();
     }
+  }
 
-    // System.out.println("Building .json for RAIRE service");
-    // writeJsonForRaireService(timeAllowed, cvrs, electionData, destinationFilePath+"-raire-service.json", DEFAULT_TIME_ALLOWED);
-    // System.out.println("Successfully Finished building json for RAIRE service.");
+  private static void reportThroughput(String name, long ballots, long nanos) {
+    double seconds = nanos / 1e9;
+    System.out.printf("%s: %d ballots in %.3f s (%.0f ballots/s)\n", name, ballots, seconds,
+        seconds > 0 ? ballots / seconds : 0);
   }
 
+  /**
+   * As above, but writes up to 'threads' partitions concurrently on a fixed-size pool. Each partition's
+   * CSV and manifest depend only on that partition, so the files are identical to the sequential ones.
+   */
+  public static long translate(String sourceFilePath, String destinationFilePath, int split, int threads)
+      throws Exception {
+    return translate(sourceFilePath, destinationFilePath, split, threads, null);
+  }
 
-  private static List<Cvr> translateToCvr(ElectionData electionData) {
-    List<Candidate> candidates = electionData.getMetadata().getCandidates();
-    int numberOfCandidates = candidates.size();
-    Map<List<Integer>, Integer> sanitisedMap = getSanitisedVotesCount(electionData);
-    Map<List<Integer>, Integer> buildVoteMap = getCvrBitTranslatedVotesMap(numberOfCandidates, sanitisedMap);
-    return buildCvrs(buildVoteMap);
-  }
-
-  private static List<Cvr> buildCvrs(Map<List<Integer>, Integer> buildVoteMap) {
-    System.out.println("Building Cvrs");
-    List<Cvr> cvrs = new ArrayList<>();
-    int count = 1;
-    int batchId = 1;
-    int startRecordId = 0;
-    int recordId;
-    for (Entry<List<Integer>, Integer> entry : buildVoteMap.entrySet()) {
-      for (int i = 0; i < entry.getValue(); i++) {
-        if (startRecordId < MAX_RECORD_PER_BATCH) {
-          recordId = ++startRecordId;
-        } else {
-          recordId = startRecordId = 1;
-          batchId++;
+  /**
+   * As above, but if gzip is not null the CSVs and manifests are written gzipped, as .csv.gz files. Their
+   * .sha256sum files are still of the uncompressed data.
+   */
+  public static long translate(String sourceFilePath, String destinationFilePath, int split, int threads,
+      GzipSettings gzip) throws Exception {
+    return translate(sourceFilePath, destinationFilePath, split, threads, gzip, null);
+  }
+
+  /**
+   * As above, and if raireService is not null, also write the whole contest (all the partitions) as a request for
+   * the raire-service, in destinationFilePath-raire-service.json (or -raire-service-aggregated.json).
+   */
+  public static long translate(String sourceFilePath, String destinationFilePath, int split, int threads,
+      GzipSettings gzip, RaireServiceJsonWriter raireService) throws Exception {
+    // Stream the ballots straight into their (aggregated) partitions rather than reading the whole ElectionData.
+    List<SanitisedElectionData> splitElectionData =
+        StvStreamingReader.readSanitisedPartitions(new File(sourceFilePath), split);
+    System.out.println("Read electionData");
+
+    // A single file can't be split between partitions, so instead write its rows in parallel regions (unless it is
+    // being gzipped, which has to be done in order, or is too small to split).
+    if (splitElectionData.size() == 1 && threads > 1 && gzip == null
+        && new CvrCsvRegionWriter(MAX_RECORD_PER_BATCH, splitElectionData.get(0).getMetadata().getCandidates().size(),
+            PRECINCT_PORTION, BALLOT_TYPE).regions(splitElectionData.get(0).getVotes().getTotalCount(), threads) > 1) {
+      System.out.println("Building CSV 1 with " + threads + " threads");
+      int ballotCount = buildCsvInRegions(splitElectionData.get(0), destinationFilePath + "-1.csv", threads);
+      System.out.println("Successfully Finished building Csv 1");
+      buildManifest(ballotCount, "TestCounty-1", destinationFilePath + "-1-manifest.csv", null);
+      System.out.println("Successfully Finished building manifest 1");
+      buildRaireServiceJson(raireService, splitElectionData, destinationFilePath, gzip);
+      return ballotCount;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, splitElectionData.size())));
+    try {
+      List<Future<Integer>> partitions = new ArrayList<>();
+      for (int i = 0; i < splitElectionData.size(); i++) {
+        final int partition = i + 1;
+        final SanitisedElectionData electionData = splitElectionData.get(i);
+        partitions.add(executor.submit(() -> {
+          System.out.printf("Building CSV %d\n", partition);
+          int ballotCount = buildCsv(electionData, destinationFilePath + "-" + partition + ".csv", gzip);
+          System.out.printf("Successfully Finished building Csv %d\n", partition);
+          buildManifest(ballotCount, "TestCounty-" + partition, destinationFilePath + "-" + partition + "-manifest.csv", gzip);
+          System.out.printf("Successfully Finished building manifest %d\n", partition);
+          return ballotCount;
+        }));
+      }
+      // Wait for them all, in order, so that the first failure is the one reported.
+      long totalBallots = 0;
+      for (Future<Integer> partition : partitions) {
+        try {
+          totalBallots += partition.get();
+        } catch (ExecutionException e) {
+          throw e.getCause() instanceof Exception cause ? cause : e;
         }
-        Cvr cvr = Cvr.builder()
-            .tabulatorNum(1)
-            .batchId(batchId)
-            .recordId(recordId)
-            .cvrNumber(count++)
-            .precinctPortion("Precinct 1")
-            .ballotType("Ballot 1 - Type 1")
-            .imprintedId("1-" + batchId + "-" + recordId)
-            .votes(entry.getKey())
-            .build();
-        cvrs.add(cvr);
       }
+      buildRaireServiceJson(raireService, splitElectionData, destinationFilePath, gzip);
+      return totalBallots;
+    } finally {
+      executor.shutdownNow();
     }
-    return cvrs;
+  }
 
+  private static void buildRaireServiceJson(RaireServiceJsonWriter raireService,
+      List<SanitisedElectionData> splitElectionData, String destinationFilePath, GzipSettings gzip) throws Exception {
+    if (raireService == null) {
+      return;
+    }
+    System.out.println("Building .json for RAIRE service");
+    raireService.write(destinationFilePath + raireService.getSuffix(), splitElectionData.get(0).getMetadata(),
+        splitElectionData.stream().map(SanitisedElectionData::getVotes).toList(), gzip);
+    System.out.println("Successfully Finished building json for RAIRE service.");
   }
 
+
   // Make a test manifest file that assumes only one scanner/batch and uses the name "test county", which
   // doesn't seem to be read.
-  private static void buildManifest(int ballotCount, String countyName, String destinationFilePath) throws Exception {
-    try (FileWriter fw = new FileWriter(destinationFilePath, false);
+  private static void buildManifest(int ballotCount, String countyName, String destinationFilePath, GzipSettings gzip)
+      throws Exception {
+    try (Sha256SumOutputStream hashed = Sha256Sums.create(destinationFilePath, gzip);
+         Writer fw = new OutputStreamWriter(hashed, UTF_8);
          BufferedWriter bw = new BufferedWriter(fw);
          PrintWriter out = new PrintWriter(bw)) {
 
@@ -140,63 +295,90 @@ public class StvToCvrTranslatorUtil {
         String dataRow = countyName + ",1," + batchID + "," + remainder + ",Bin 1";
         out.println(dataRow);
       }
+      // PrintWriter keeps its errors to itself.
+      if (out.checkError()) {
+        throw new IOException("Couldn't write " + destinationFilePath);
+      }
+      hashed.finish();
+      // Closing writes the sidecar, which could fail too.
+      out.close();
+      if (out.checkError()) {
+        throw new IOException("Couldn't write " + destinationFilePath + Sha256Sums.SUFFIX);
+      }
     }
   }
 
-  private static void buildCsv(List<Cvr> cvrs, ElectionData electionData,
-      String destinationFilePath) throws Exception {
-    List<String> candidates = electionData.getMetadata().getCandidates().stream()
+  /**
+   * Write the CSV one row at a time, straight from the table of distinct ballots. The cvrNumber, batchId,
+   * recordId and imprintedId are assigned as we go, so memory use does not depend on the number of ballots.
+   * The vote columns are rendered once per distinct ballot and copied for each of its rows.
+   * @return the number of ballots written, for the manifest.
+   */
+  private static int buildCsv(SanitisedElectionData electionData, String destinationFilePath, GzipSettings gzip)
+      throws Exception {
+    Metadata metadata = electionData.getMetadata();
+    BallotTable sanitisedTable = electionData.getVotes();
+    List<String> candidates = metadata.getCandidates().stream()
         .map(Candidate::getName)
         .collect(Collectors.toList());
-    try (FileWriter fw = new FileWriter(destinationFilePath, false);
-        BufferedWriter bw = new BufferedWriter(fw);
-        PrintWriter out = new PrintWriter(bw)) {
-      String headerRow = new StringBuilder()
-          .append(electionData.getMetadata().getName().getYear())
-          .append(" ")
-          .append(electionData.getMetadata().getName().getElectorate())
-          .append(" ")
-          .append(electionData.getMetadata().getName().getName())
-          .append(",")
-          .append("5.10.11.24").toString();
-      headerRow = headerRow + StringUtils.repeat(",", 5 + candidates.size() * candidates.size());
-      out.println(headerRow);
-      out.println(buildCountyHeader(electionData, candidates.size()));
-      out.println(buildCandidateHeader(candidates));
-      String columnHeadingRow = "CvrNumber,TabulatorNum,BatchId,RecordId,ImprintedId,PrecinctPortion,BallotType"
-              +StringUtils.repeat(",",candidates.size() * candidates.size());
-      out.println(columnHeadingRow);
-      for (Cvr cvr : cvrs) {
-        out.println(cvr);
+    // Hashed as it is written, producing a .sha256sum sidecar for colorado-rla uploads.
+    try (Sha256SumOutputStream hashed = Sha256Sums.create(destinationFilePath, gzip);
+         CvrCsvWriter out = new CvrCsvWriter(hashed, PRECINCT_PORTION, BALLOT_TYPE)) {
+      for (String line : buildHeaderLines(metadata, candidates)) {
+        out.writeLine(line);
+      }
+
+      int count = 1;
+      int batchId = 1;
+      int startRecordId = 0;
+      int recordId;
+      for (int b = 0; b < sanitisedTable.size(); b++) {
+        out.setBallot(candidates.size(), sanitisedTable.getPreferences(b));
+        for (int i = 0; i < sanitisedTable.getCount(b); i++) {
+          if (startRecordId < MAX_RECORD_PER_BATCH) {
+            recordId = ++startRecordId;
+          } else {
+            recordId = startRecordId = 1;
+            batchId++;
+          }
+          out.writeRow(count++, 1, batchId, recordId);
+        }
       }
+      out.flush();
+      hashed.finish();
+      return count - 1;
     }
   }
 
-  private static void writeJsonForRaireService(int time, List<Cvr> cvrs, ElectionData electionData, String destinationFilePath) throws Exception {
-    List<String> candidates = electionData.getMetadata().getCandidates().stream().map(Candidate::getName).collect(Collectors.toList());
-    List<List<String>> votesWithNames = new ArrayList<>();
-
-    // A map from candidate ID list to the number of repeats
-    Map<List<Integer>, Integer> sanitisedMap = getSanitisedVotesCount(electionData);
-
-    // Turn it into a list of candidates, repeat it as many times as required
-    sanitisedMap.forEach( (vote, n) -> {
-        List<String> voteStrings = vote.stream().map(candidates::get).toList();
-        votesWithNames.addAll(Collections.nCopies(n, voteStrings));
-    });
-
-    // Build the ContestRequest object
-    String contestName = electionData.getMetadata().getName().getName();
-    int totalAuditableBallots = cvrs.size();
-    ContestRequest cr = new ContestRequest(contestName, totalAuditableBallots, time, candidates, votesWithNames);
-
-    // Serialize it and write it to a file
-    try (FileWriter fw = new FileWriter(destinationFilePath, false);
-         BufferedWriter bw = new BufferedWriter(fw);
-         PrintWriter out = new PrintWriter(bw)) {
+  /**
+   * As buildCsv, but the rows are written by up to 'threads' threads at once, each filling its own region of the
+   * file. The file is byte-for-byte the same. See CvrCsvRegionWriter.
+   */
+  private static int buildCsvInRegions(SanitisedElectionData electionData, String destinationFilePath, int threads)
+      throws Exception {
+    Metadata metadata = electionData.getMetadata();
+    List<String> candidates = metadata.getCandidates().stream()
+        .map(Candidate::getName)
+        .collect(Collectors.toList());
+    CvrCsvRegionWriter writer = new CvrCsvRegionWriter(MAX_RECORD_PER_BATCH, candidates.size(), PRECINCT_PORTION, BALLOT_TYPE);
+    return (int) writer.write(buildHeaderLines(metadata, candidates), electionData.getVotes(), destinationFilePath, threads);
+  }
 
-         out.print(objectMapper.writeValueAsString(cr));
-    }
+  // The four lines at the top of the CSV: the election, the contest, the candidates and the column headings.
+  private static List<String> buildHeaderLines(Metadata metadata, List<String> candidates) {
+    String headerRow = new StringBuilder()
+        .append(metadata.getName().getYear())
+        .append(" ")
+        .append(metadata.getName().getElectorate())
+        .append(" ")
+        .append(metadata.getName().getName())
+        .append(",")
+        .append("5.10.11.24").toString();
+    headerRow = headerRow + StringUtils.repeat(",", 5 + candidates.size() * candidates.size());
+    String columnHeadingRow = "CvrNumber,TabulatorNum,BatchId,RecordId,ImprintedId,PrecinctPortion,BallotType"
+            +StringUtils.repeat(",",candidates.size() * candidates.size());
+    return List.of(headerRow, buildCountyHeader(metadata, candidates.size()), buildCandidateHeader(candidates),
+        columnHeadingRow);
   }
 
   private static String buildCandidateHeader(List<String> candidates) {
@@ -219,12 +401,12 @@ public class StvToCvrTranslatorUtil {
     return candidateHeadersRow.toString();
   }
 
-  private static String buildCountyHeader(ElectionData electionData, int numberOfCandidates) {
+  private static String buildCountyHeader(Metadata metadata, int numberOfCandidates) {
     StringBuilder countyHeaderRow = new StringBuilder(StringUtils.repeat(",", 7));
     for (int i = 0; i < numberOfCandidates * numberOfCandidates; i++) {
       countyHeaderRow
           .append("\"")
-          .append(electionData.getMetadata().getName().getElectorate())
+          .append(metadata.getName().getElectorate())
           .append(" (Number of positions=1, Number of ranks=")
           .append(numberOfCandidates).append(")\"");
       if (i < numberOfCandidates * numberOfCandidates - 1) {
@@ -0,0 +1,179 @@
+package au.org.democracydevelopers.utils;
+
+import static au.org.democracydevelopers.utils.StvReadingFunctionUtils.findFiles;
+import static au.org.democracydevelopers.utils.StvReadingFunctionUtils.parseOptions;
+import static java.lang.System.exit;
+
+import au.org.democracydevelopers.utils.domain.stv.Metadata;
+import au.org.democracydevelopers.utils.domain.stv.SanitisedElectionData;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+/**
+ * Loads STV files straight into a colorado-rla database, with the same rows (and IDs) that StvToSqlTranslatorUtil
+ * would write, but without writing any files: the county, contest, cast_vote_record and cvr_contest_info rows are
+ * streamed to the server through the driver's COPY API as they are generated.
+ * mvn compile exec:java -Dexec.mainClass="au.org.democracydevelopers.utils.StvToPostgresLoaderUtil" -Dexec.args="jdbcUrl source [--chunk=N] [--format=copy|copy-csv|copy-binary]"
+ * The jdbcUrl is e.g. jdbc:postgresql://localhost:5432/corla?user=corlaadmin&password=...
+ * If source is a directory, every .json file under it is loaded, numbered in path order as in StvToSqlTranslatorUtil.
+ * Otherwise the contest gets ID 1 (or --id=N).
+ * Each contest is loaded in transactions of --chunk ballots (default 100000): the county and contest rows are
+ * committed first, then each chunk's cast_vote_record rows followed by their cvr_contest_info rows. If loading
+ * fails, the chunks already committed stay in the database. The default format is copy-binary, which is the
+ * cheapest for the server to parse.
+ * When everything is loaded, the number of rows and rows/sec for each table are printed.
+ */
+public class StvToPostgresLoaderUtil {
+
+  private static final int DEFAULT_CHUNK = 100000;
+
+  private static final String usage = "Usage: mvn compile exec:java -Dexec.mainClass=\"au.org.democracydevelopers.utils.StvToPostgresLoaderUtil\" -Dexec.args=\"jdbcUrl source [--chunk=N] [--format=copy|copy-csv|copy-binary] [--id=N]\"";
+
+  public static void main(String[] commandLine) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    String[] args = parseOptions(commandLine, options);
+    if (args.length != 2) {
+      System.err.println("Invalid number of arguments. Please use command as following");
+      System.out.println(usage);
+      exit(1);
+    }
+
+    int chunk = DEFAULT_CHUNK;
+    int id = 1;
+    try {
+      chunk = Integer.parseInt(options.getOrDefault("chunk", Integer.toString(DEFAULT_CHUNK)));
+      id = Integer.parseInt(options.getOrDefault("id", "1"));
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid chunk size or id. Please use command as following");
+      System.out.println(usage);
+      exit(1);
+    }
+    PgCopyWriter.Format format = PgCopyWriter.Format.fromOption(options.getOrDefault("format", "copy-binary"));
+    if (format == null || chunk < 1) {
+      System.err.println("Invalid format or chunk size. Please use command as following");
+      System.out.println(usage);
+      exit(1);
+    }
+
+    StvToPostgresLoaderUtil loader = new StvToPostgresLoaderUtil(format, chunk);
+    try (Connection connection = DriverManager.getConnection(args[0])) {
+      File source = new File(args[1]);
+      if (source.isDirectory()) {
+        loader.loadAllContests(connection, args[1]);
+      } else {
+        loader.loadContest(connection, id, source);
+      }
+    }
+    loader.reportThroughput();
+  }
+
+  private final PgCopyWriter.Format format;
+  private final int chunk;
+
+  // Rows and time spent copying, per table, in the order the tables are first loaded.
+  private final Map<String, long[]> tableStats = new LinkedHashMap<>();
+
+  public StvToPostgresLoaderUtil(PgCopyWriter.Format format, int chunk) {
+    this.format = format;
+    this.chunk = chunk;
+  }
+
+  // Load every .json file under dataPath, with IDs assigned in path order.
+  public void loadAllContests(Connection connection, String dataPath) throws IOException, SQLException {
+    List<File> sourceFiles = new ArrayList<>();
+    findFiles(Paths.get(dataPath), ".json").forEachRemaining(sourceFiles::add);
+    sourceFiles.sort(Comparator.comparing(File::getPath));
+    for (int i = 0; i < sourceFiles.size(); i++) {
+      loadContest(connection, i + 1, sourceFiles.get(i));
+    }
+  }
+
+  /**
+   * Load one contest, committing after the county and contest rows and after each chunk of ballots.
+   */
+  public void loadContest(Connection connection, int countyAndContestID, File source) throws IOException, SQLException {
+    SanitisedElectionData electionData = StvStreamingReader.readSanitised(source);
+    Metadata metadata = electionData.getMetadata();
+    CorlaCopyRows rows = new CorlaCopyRows(countyAndContestID, metadata.getCandidates(), electionData.getVotes());
+    System.out.println("Loading contest "+countyAndContestID+": "+metadata.getName().getElectorate());
+
+    boolean autoCommit = connection.getAutoCommit();
+    connection.setAutoCommit(false);
+    try {
+      long start = System.nanoTime();
+      try (PgCopyWriter out = copy(connection, CorlaCopyRows.COUNTY_COLUMNS)) {
+        CorlaCopyRows.writeCounty(out, countyAndContestID, metadata);
+      }
+      record("county", 1, System.nanoTime() - start);
+      start = System.nanoTime();
+      try (PgCopyWriter out = copy(connection, CorlaCopyRows.CONTEST_COLUMNS)) {
+        CorlaCopyRows.writeContest(out, countyAndContestID, metadata);
+      }
+      connection.commit();
+      record("contest", 1, System.nanoTime() - start);
+
+      int chunkRows;
+      do {
+        // Write this chunk to cast_vote_record, then go back and write the same ballots to cvr_contest_info,
+        // which refers to them.
+        CorlaCopyRows chunkStart = rows.copy();
+        start = System.nanoTime();
+        chunkRows = 0;
+        try (PgCopyWriter out = copy(connection, CorlaCopyRows.CAST_VOTE_RECORD_COLUMNS)) {
+          while (chunkRows < chunk && rows.next()) {
+            rows.writeCastVoteRecord(out);
+            chunkRows++;
+          }
+        }
+        record("cast_vote_record", chunkRows, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        try (PgCopyWriter out = copy(connection, CorlaCopyRows.CVR_CONTEST_INFO_COLUMNS)) {
+          for (int i = 0; i < chunkRows && chunkStart.next(); i++) {
+            chunkStart.writeCvrContestInfo(out);
+          }
+        }
+        connection.commit();
+        record("cvr_contest_info", chunkRows, System.nanoTime() - start);
+      } while (chunkRows == chunk);
+    } catch (IOException | SQLException | RuntimeException e) {
+      connection.rollback();
+      throw e;
+    } finally {
+      connection.setAutoCommit(autoCommit);
+    }
+  }
+
+  public void reportThroughput() {
+    for (Map.Entry<String, long[]> table : tableStats.entrySet()) {
+      long rows = table.getValue()[0];
+      double seconds = table.getValue()[1] / 1e9;
+      System.out.printf("%s: %d rows in %.2fs (%.0f rows/sec)\n", table.getKey(), rows, seconds,
+          seconds > 0 ? rows / seconds : 0);
+    }
+  }
+
+  // Start a COPY ... FROM STDIN for the given table and columns. Closing the writer ends the COPY.
+  private PgCopyWriter copy(Connection connection, String tableAndColumns) throws SQLException, IOException {
+    String sql = "COPY " + tableAndColumns + " FROM STDIN WITH (FORMAT " + format.sqlName + ")";
+    return new PgCopyWriter(new PGCopyOutputStream(connection.unwrap(PGConnection.class), sql), format);
+  }
+
+  private void record(String table, long rows, long nanos) {
+    long[] stats = tableStats.computeIfAbsent(table, t -> new long[2]);
+    stats[0] += rows;
+    stats[1] += nanos;
+  }
+}
@@ -2,21 +2,33 @@ package au.org.democracydevelopers.utils;
 
 import static au.org.democracydevelopers.utils.StvReadingFunctionUtils.escapeChars;
 import static au.org.democracydevelopers.utils.StvReadingFunctionUtils.findFiles;
-import static au.org.democracydevelopers.utils.StvReadingFunctionUtils.getSanitisedVotesCount;
+import static au.org.democracydevelopers.utils.StvReadingFunctionUtils.parseOptions;
 import static java.lang.System.exit;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+import au.org.democracydevelopers.utils.Sha256Sums.Sha256SumOutputStream;
+import au.org.democracydevelopers.utils.domain.stv.BallotTable;
 import au.org.democracydevelopers.utils.domain.stv.Candidate;
-import au.org.democracydevelopers.utils.domain.stv.ElectionData;
 import au.org.democracydevelopers.utils.domain.stv.Metadata;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import au.org.democracydevelopers.utils.domain.stv.SanitisedElectionData;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.file.Paths;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import org.apache.commons.io.FilenameUtils;
 
@@ -40,24 +52,34 @@ import org.apache.commons.io.FilenameUtils;
  * * 2 arguments: If one input is specified on the command line, it is taken to be a directory. We iterate over all
  *                the .json files in the directory, translating them into SQL, with an incrementing county-and-contest ID.
  *                This ensures that all the sql files produced can be read into a database without ID clashes, assuming
- *                that the number of votes per contest does not exceed MAX_VOTES_PER_ELECTION.
+ *                that the number of votes per contest does not exceed CorlaCopyRows.MAX_VOTES_PER_ELECTION.
+ *                The files are sorted by path and numbered in that order before any are translated, so the IDs
+ *                don't depend on the order the file system lists them. Contests are translated concurrently
+ *                (--threads=N, default one per processor) and Metadata.java is written in contest-ID order at
+ *                the end, so the output is the same whatever the thread count.
+ * With --format=copy (or copy-csv or copy-binary) the cast_vote_record and cvr_contest_info rows are instead written as
+ * PostgreSQL COPY data, in destination_cast_vote_record.copy and destination_cvr_contest_info.copy (.csv or .bin for
+ * the other formats). destination.sql then holds the county and contest INSERTs followed by psql \copy commands that
+ * load those files, so it is still the one file to run, e.g. psql -d corla -f destination.sql. The \copy paths are the
+ * ones the files were written to, so run psql from the directory the translator was run from. In the directory case,
+ * load_all.sql runs every contest's .sql file in contest-ID order.
+ * By default the INSERTs are bulk: destination.sql holds one INSERT for all the cast_vote_record rows, and
+ * destination_cvr_contest_info.sql one for all the cvr_contest_info rows. --bulk=N splits them into statements of
+ * N rows instead, and --bulk=off writes one INSERT per row, all in destination.sql. --commit-every=M wraps every M
+ * statements (with --bulk=off, every M CVRs, i.e. both their INSERTs) in BEGIN; ... COMMIT;, so that a large contest
+ * is loaded in transactions of a manageable size.
+ * --gzip (or --gzip=level, with --gzip-block=bytes) writes the INSERT files, or the COPY data files, gzipped as .gz.
+ * Their .sha256sum files are of the uncompressed data. For COPY, destination.sql and load_all.sql stay uncompressed
+ * and \copy the data in through gzip -dc.
  * Note there is NO EFFORT AT PROPER SQL ESCAPING so please don't use this for anything other than
  * generating test data from trustworthy sources.
  */
 public class StvToSqlTranslatorUtil {
 
-  private static final ObjectMapper objectMapper = new ObjectMapper();
-
   private static final int MAX_RECORD_PER_BATCH = 78;
 
-  // Used to pad the right number of zeros after the contest value in ID. If this assumption is
-  // wrong, IDs may not be unique.
-  // 7 digits are sufficient for vote IDs assuming there are no more than a million per contest.
-  // If you change this, you have to change the string formatting (%07d) in buildSQLValues.
-  private static final int MAX_VOTES_PER_ELECTION = 1000000;
-
-  private static final String usage = "Usage: mvn clean compile exec:java -Dexec.mainClass=\"au.org.democracydevelopers.utils.StvTosqlTranslatorUtil\" -Dexec.args=\"commentForFiles sourceFile.json destinationFile \"\n"+
-   "Alternative arguments for whole-directory run: -Dexec.args=\"commentForFiles sourceDirectory.\"";
+  private static final String usage = "Usage: mvn clean compile exec:java -Dexec.mainClass=\"au.org.democracydevelopers.utils.StvTosqlTranslatorUtil\" -Dexec.args=\"commentForFiles sourceFile.json destinationFile [--format=insert|copy|copy-csv|copy-binary] [--bulk=all|off|N] [--commit-every=M] [--gzip[=level] [--gzip-block=bytes]]\"\n"+
+   "Alternative arguments for whole-directory run: -Dexec.args=\"commentForFiles sourceDirectory [--threads=N] [--format=...]\"";
 
   private final static String CAST_VOTE_RECORD_INSERT =
       "INSERT INTO cast_vote_record (id, audit_board_index, comment, cvr_id, ballot_type, "+
@@ -67,11 +89,14 @@ public class StvToSqlTranslatorUtil {
   private final static String CVR_CONTEST_INFO_INSERT =
       "INSERT INTO cvr_contest_info (cvr_id, county_id, choices, contest_id, index) VALUES";
 
-  private final static boolean DO_BULK = true;
+  private final static String BEGIN = "BEGIN;";
+
+  private final static String COMMIT = "COMMIT;";
 
-  public static void main(String[] args) throws Exception {
-    // TODO: make this a commandline parameter.
-    boolean doBulk = DO_BULK;
+  public static void main(String[] commandLine) throws Exception {
+    // Options look like --name=value and can go anywhere; everything else is positional.
+    Map<String, String> options = new HashMap<>();
+    String[] args = parseOptions(commandLine, options);
 
     if (args.length < 2 || args.length > 3) {
       System.err.println("Invalid number of arguments. Please use command as following");
@@ -79,13 +104,43 @@ public class StvToSqlTranslatorUtil {
       exit(1);
     }
 
+    int threads = Runtime.getRuntime().availableProcessors();
+    if (options.containsKey("threads")) {
+      threads = parseAtLeast(options.get("threads"), "--threads", 1);
+    }
+
+    SqlOutputOptions outputOptions = new SqlOutputOptions();
+    String format = options.getOrDefault("format", "insert");
+    if (!format.equals("insert")) {
+      outputOptions.setCopyFormat(PgCopyWriter.Format.fromOption(format));
+      if (outputOptions.getCopyFormat() == null) {
+        System.err.println("Invalid format. Please use command as following");
+        System.out.println(usage);
+        exit(1);
+      }
+    }
+    String bulk = options.getOrDefault("bulk", "all");
+    if (bulk.equals("off")) {
+      outputOptions.setDoBulk(false);
+    } else if (!bulk.equals("all")) {
+      outputOptions.setRowsPerInsert(parseAtLeast(bulk, "--bulk", 0));
+    }
+    outputOptions.setCommitEvery(parseAtLeast(options.getOrDefault("commit-every", "0"), "--commit-every", 0));
+    try {
+      outputOptions.setGzip(GzipSettings.fromOptions(options));
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid --gzip level or --gzip-block size. Please use command as following");
+      System.out.println(usage);
+      exit(1);
+    }
+
     String comment = args[0];
 
     // The single-file case.
     if(args.length == 3) {
       String sourceFilePath = args[1];
       String destinationFilePath = args[2];
-      translateContest(1, comment, new File(sourceFilePath), destinationFilePath, doBulk);
+      translateContest(1, comment, new File(sourceFilePath), destinationFilePath, outputOptions);
       System.out.println("translated CVR File is generated at: " + destinationFilePath);
     }
 
@@ -93,70 +148,158 @@ public class StvToSqlTranslatorUtil {
     // Also need to make a metadata file.
     if (args.length == 2) {
       String dataPath = args[1];
-      translateAllContests(dataPath, comment, doBulk);
+      translateAllContests(dataPath, comment, outputOptions, threads);
       System.out.println("translated CVR Files and metadata are generated at: " + dataPath);
     }
   }
 
+  // Parse the value of a numeric option, which must be at least min, or print usage and exit.
+  private static int parseAtLeast(String value, String option, int min) {
+    try {
+      int n = Integer.parseInt(value);
+      if (n >= min) {
+        return n;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    System.err.println("Invalid " + option + "=" + value + ": must be a number, at least " + min + ". Please use command as following");
+    System.out.println(usage);
+    exit(1);
+    return 0;
+  }
+
   public static void translateAllContests(String dataPath, String comment, boolean doBulk) {
-    ElectionData electionData;
+    translateAllContests(dataPath, comment, doBulk, 1);
+  }
+
+  public static void translateAllContests(String dataPath, String comment, boolean doBulk, int threads) {
+    SqlOutputOptions outputOptions = new SqlOutputOptions();
+    outputOptions.setDoBulk(doBulk);
+    translateAllContests(dataPath, comment, outputOptions, threads);
+  }
 
-    Iterator<File> sourceFiles = findFiles(Paths.get(dataPath), ".json");
+  /**
+   * Translate every .json file under dataPath, as set out in outputOptions. For COPY output, also write a
+   * load_all.sql to load every contest.
+   */
+  public static void translateAllContests(String dataPath, String comment, SqlOutputOptions outputOptions,
+      int threads) {
+    // Number the contests up front, in path order, so that IDs are reproducible.
+    List<File> sourceFiles = new ArrayList<>();
+    findFiles(Paths.get(dataPath), ".json").forEachRemaining(sourceFiles::add);
+    sourceFiles.sort(Comparator.comparing(File::getPath));
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sourceFiles.size())));
     try {
+      List<Future<SanitisedElectionData>> contests = new ArrayList<>();
+      for (int i = 0; i < sourceFiles.size(); i++) {
+        final int contestID = i + 1;
+        final File sourceFile = sourceFiles.get(i);
+        contests.add(executor.submit(() -> translateContest(contestID, comment, sourceFile,
+            FilenameUtils.removeExtension(sourceFile.toString()), outputOptions)));
+      }
 
-      FileWriter fw = new FileWriter(dataPath+"/Metadata.java", false);
-      BufferedWriter bw = new BufferedWriter(fw);
-      PrintWriter metadataOut = new PrintWriter(bw);
-
-      int contestID = 1;
-      while (sourceFiles.hasNext()) {
-        File sourceFile = sourceFiles.next();
-        electionData = translateContest(contestID, comment, sourceFile,
-            FilenameUtils.removeExtension(sourceFile.toString()), doBulk);
-        writeMetadataRow(metadataOut, contestID, electionData);
-        contestID++;
+      // Only write the metadata once everything has been translated, in contest-ID order.
+      try (FileWriter fw = new FileWriter(dataPath + "/Metadata.java", false);
+          BufferedWriter bw = new BufferedWriter(fw);
+          PrintWriter metadataOut = new PrintWriter(bw)) {
+        for (int i = 0; i < contests.size(); i++) {
+          writeMetadataRow(metadataOut, i + 1, contests.get(i).get());
+        }
+      }
+
+      if (outputOptions.getCopyFormat() != null) {
+        try (Sha256SumOutputStream hashed = Sha256Sums.create(dataPath + "/load_all.sql");
+            PrintWriter loadOut = new PrintWriter(new OutputStreamWriter(hashed, UTF_8))) {
+          writeComment(loadOut, comment);
+          for (File sourceFile : sourceFiles) {
+            loadOut.println("\\i " + FilenameUtils.removeExtension(sourceFile.toString()) + ".sql");
+          }
+          if (loadOut.checkError()) {
+            throw new IOException("Couldn't write " + dataPath + "/load_all.sql");
+          }
+          hashed.finish();
+          // Closing writes the sidecar, and PrintWriter would keep an error doing that to itself too.
+          loadOut.close();
+          if (loadOut.checkError()) {
+            throw new IOException("Couldn't write " + dataPath + "/load_all.sql" + Sha256Sums.SUFFIX);
+          }
+        }
       }
-      metadataOut.close();
     } catch (Exception ex) {
       System.out.println("Error with file I/O");
-      throw new RuntimeException(ex);
+      throw new RuntimeException(ex instanceof ExecutionException ? ex.getCause() : ex);
+    } finally {
+      executor.shutdownNow();
     }
   }
 
 
-  public static ElectionData translateContest(int countyAndContestID, String comment, File sourceFilePath,
+  public static SanitisedElectionData translateContest(int countyAndContestID, String comment, File sourceFilePath,
       String destinationFilePath, boolean doBulk) throws Exception {
-    ElectionData electionData = objectMapper.readValue(
-        sourceFilePath,
-        ElectionData.class);
+    SqlOutputOptions outputOptions = new SqlOutputOptions();
+    outputOptions.setDoBulk(doBulk);
+    return translateContest(countyAndContestID, comment, sourceFilePath, destinationFilePath, outputOptions);
+  }
+
+  /**
+   * Translate one contest. For INSERT statements, the output is destination.sql and, for bulk, also
+   * destination_cvr_contest_info.sql. For COPY output, the rows are written as COPY data, and destination.sql loads it.
+   */
+  public static SanitisedElectionData translateContest(int countyAndContestID, String comment, File sourceFilePath,
+      String destinationFilePath, SqlOutputOptions outputOptions) throws Exception {
+    // Stream the ballots straight into the sanitised map rather than reading the whole ElectionData.
+    SanitisedElectionData electionData = StvStreamingReader.readSanitised(sourceFilePath);
     System.out.println("Read electionData");
 
-    if(electionData.getAtl().size() + electionData.getBtl().size() >= MAX_VOTES_PER_ELECTION) {
+    BallotTable sanitisedTable = electionData.getVotes();
+
+    // The same test as CorlaCopyRows makes for COPY output, on the ballots that will actually be written, so that
+    // the IDs are unique either way.
+    if(sanitisedTable.getTotalCount() >= CorlaCopyRows.MAX_VOTES_PER_ELECTION) {
       System.out.println("Error - too many votes for unique vote IDs");
       throw new RuntimeException("Too many votes");
     }
 
-    Map<List<Integer>, Integer> sanitisedMap = getSanitisedVotesCount(electionData);
+    if (outputOptions.getCopyFormat() != null) {
+      writeCopyContest(countyAndContestID, comment, destinationFilePath, electionData, outputOptions.getCopyFormat(),
+          outputOptions.getGzip());
+      System.out.println("Successfully Finished building COPY data");
+      return electionData;
+    }
 
     System.out.println("Building SQL");
     // If we're not doing bulk, this file will be used to store all the data
-    try (FileWriter fw = new FileWriter(destinationFilePath+".sql", false);
-        BufferedWriter bw = new BufferedWriter(fw);
-        PrintWriter out = new PrintWriter(bw);
+    // Both files are hashed as they are written, producing .sha256sum sidecars.
+    // The header lines go through the PrintWriters, and the rows straight to the byte streams underneath them.
+    try (Sha256SumOutputStream hashed = Sha256Sums.create(destinationFilePath+".sql", outputOptions.getGzip());
+        OutputStream os = new BufferedOutputStream(hashed, 1 << 16);
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(os, UTF_8));
 
-        FileWriter fw_cvr_contest_info = new FileWriter(destinationFilePath + "_cvr_contest_info.sql", false);
-        BufferedWriter bw_cvr_contest_info = new BufferedWriter(fw_cvr_contest_info);
-        PrintWriter out_cvr_contest_info = new PrintWriter(bw_cvr_contest_info)) {
+        Sha256SumOutputStream hashed_cvr_contest_info = Sha256Sums.create(destinationFilePath + "_cvr_contest_info.sql", outputOptions.getGzip());
+        OutputStream os_cvr_contest_info = new BufferedOutputStream(hashed_cvr_contest_info, 1 << 16);
+        PrintWriter out_cvr_contest_info = new PrintWriter(new OutputStreamWriter(os_cvr_contest_info, UTF_8))) {
 
       writeComment(out, comment);
-      if(doBulk) {
+      if(outputOptions.isDoBulk()) {
         writeComment(out_cvr_contest_info, comment);
       }
       writeSQLCountyAndContestInfo(out, countyAndContestID, electionData.getMetadata());
-      writeSQLValues(out, out_cvr_contest_info, countyAndContestID, electionData.getMetadata().getCandidates(), sanitisedMap, doBulk);
-
-      out_cvr_contest_info.close();
+      out.flush();
+      out_cvr_contest_info.flush();
+      writeSQLValues(os, os_cvr_contest_info, countyAndContestID, electionData.getMetadata().getCandidates(), sanitisedTable, outputOptions);
+      if (out.checkError() || out_cvr_contest_info.checkError()) {
+        throw new IOException("Couldn't write " + destinationFilePath + ".sql");
+      }
+      hashed.finish();
+      hashed_cvr_contest_info.finish();
+      // Closing writes the sidecars, and PrintWriter would keep an error doing that to itself too.
       out.close();
+      out_cvr_contest_info.close();
+      if (out.checkError() || out_cvr_contest_info.checkError()) {
+        throw new IOException("Couldn't write " + destinationFilePath + ".sql" + Sha256Sums.SUFFIX);
+      }
     }
 
 
@@ -164,99 +307,185 @@ public class StvToSqlTranslatorUtil {
     return electionData;
   }
 
-  private static void writeSQLValues(PrintWriter out, PrintWriter out_cvr_contest_info, int countyandContestID, List<Candidate> candidates, Map<List<Integer>, Integer> buildVoteMap, boolean doBulk) {
+  private static void writeSQLValues(OutputStream out, OutputStream out_cvr_contest_info, int countyandContestID,
+      List<Candidate> candidates, BallotTable sanitisedTable, SqlOutputOptions outputOptions) throws IOException {
     System.out.println("Building SQL values for contest number "+countyandContestID);
 
+    boolean doBulk = outputOptions.isDoBulk();
     int count = 1; // Total count, including possible multiple instances of same choices.
     int batchId = 1;
     int startRecordId = 0;
     int recordId;
 
-    // If we're doing bulk insert we need to print the insert statement at the start
-    if(doBulk) {
-      out.println(CAST_VOTE_RECORD_INSERT);
-      out_cvr_contest_info.println(CVR_CONTEST_INFO_INSERT);
-    }
+    // Renders the rows. See CvrSqlWriter for the columns and the values we use for them.
+    CvrSqlWriter rows = new CvrSqlWriter(countyandContestID, doBulk, CAST_VOTE_RECORD_INSERT, CVR_CONTEST_INFO_INSERT);
+
+    // These split the rows into statements, and the statements into transactions. If we're not doing bulk, every
+    // row is a statement, CvrSqlWriter writes the INSERT for each, and both tables go in the one file. Then each CVR's
+    // two rows count as one for the chunker, so that a COMMIT never comes between a CVR and its cvr_contest_info.
+    StatementChunker statements = doBulk
+        ? new StatementChunker(out, CAST_VOTE_RECORD_INSERT, outputOptions.getRowsPerInsert(), outputOptions.getCommitEvery())
+        : new StatementChunker(out, null, 2, outputOptions.getCommitEvery());
+    StatementChunker cvrContestInfoStatements = doBulk
+        ? new StatementChunker(out_cvr_contest_info, CVR_CONTEST_INFO_INSERT, outputOptions.getRowsPerInsert(), outputOptions.getCommitEvery())
+        : statements;
 
     // Iterate over all the different vote types (i.e. choices)
-    var iterator = buildVoteMap.entrySet().iterator();
-    while (iterator.hasNext()) {
-      Map.Entry<List<Integer>, Integer> entry = iterator.next();
+    for (int b = 0; b < sanitisedTable.size(); b++) {
+      int repeats = sanitisedTable.getCount(b);
 
       // We need to keep track of the very last vote so we can put a semicolon rather than a comma
       // at the end of the file.
-      boolean isLastChoicesType = !iterator.hasNext();
+      boolean isLastChoicesType = b == sanitisedTable.size() - 1;
 
-      // Translate the choices (integers) into a list of strings
-      List<String> choices = entry.getKey().stream().map(c -> candidates.get(c).getName()).toList();
+      // Translate the choices (integers) into a list of strings, and render them once for all the copies.
+      rows.setBallot(sanitisedTable.getBallot(b).stream().map(c -> candidates.get(c).getName()).toList());
 
       // Print out a line for each vote - each line has the same choices but different IDs.
-      for (int i = 0; i < entry.getValue(); i++) {
-        boolean isLast = isLastChoicesType && (i == entry.getValue() - 1);  // This is the last vote if it's the last instance of the last kind.
+      for (int i = 0; i < repeats; i++) {
+        boolean isLast = isLastChoicesType && (i == repeats - 1);  // This is the last vote if it's the last instance of the last kind.
         if (startRecordId < MAX_RECORD_PER_BATCH) {
           recordId = ++startRecordId;
         } else {
           recordId = startRecordId = 1;
           batchId++;
         }
-        // Unique ID from unique contestID and current count, prepended with zeros as needed for fixed width.
-        String cvrID = countyandContestID+String.format("%07d",count);
-        String imprintedID = "1-"+batchId+'-'+recordId;      // Imprinted ID: scanner_id - batch_id - record_id. ScannerID can always be 1.
-
-
-        // Note there is NO EFFORT AT PROPER SQL ESCAPING - this is just a scratch file for test data
-        // generation from trustworthy sources.
-        String castVoteRecordValue =
-            // If we're not doing bulk insert, we need to print the insert statement every time
-            (doBulk ? "" : CAST_VOTE_RECORD_INSERT) +
-            // Write out the data
-            "(" + cvrID +','+
-            "null, null, null,"+
-            "'Type 1',"+ // Ballot type, ignored for now.
-            "'" +batchId+ "'," + // BatchId seems to be stored as a string.
-            countyandContestID+','+ // County ID. We'll use the same number for both county and contest ID for now.
-            count+','+  // CVR number - can match 'count' because it's allowed to repeat between counties.
-            "'"+imprintedID+"',"+
-            recordId+','+
-            "'UPLOADED',"+ // record type , might as well always be "uploaded".
-            "1,"+ // Scanner ID. Always 1.
-            count+','+ // Sequence number. No need to be unique between counties.
-            "null, 0, null, null, null,"+ // More data we don't care about: timestamp, version, rand, revision, round number.
-            "'cvr:1:"+imprintedID+"')" + // Not sure what this uri is, but it seems to be basically the imprinted ID and some extra text.
-            ( (doBulk && !isLast) ? "," : ";"); // If we're doing bulk inserts, the separate lines should be separated by a comma,
-                                                // unless it's the last vote, in which case it gets a semicolon.
-                                                // If not bulk, they're separate statements and all need a semicolon.
-        out.println(castVoteRecordValue);
-
-        // Note there is NO EFFORT AT PROPER SQL ESCAPING - this is just a scratch file for test data
-        // generation from trustworthy sources.
-        String cvrContestInfoValue =
-            // If we're not doing bulk insert, we need to print the insert statement every time
-            (doBulk ? "" : CVR_CONTEST_INFO_INSERT) +
-            // Write out the data
-            // Note the record generated by colorado-rla has other values, which we ignore for these tests:
-            // "INSERT INTO public.cvr_contest_info (cvr_id, county_id, choices, comment, consensus, contest_id, "+
-            // "index, version) VALUES ("+
-            "( " + cvrID +','+
-            countyandContestID+','+ // county ID.
-            "'[\""+String.join("\",\"",choices.stream().map(StvReadingFunctionUtils::escapeChars).toList())+"\"]',"+ // The votes as a string.
-            countyandContestID+','+ // contest ID.
-            "0)"; // Index zero, because all our cvrs have only one contest.
+
+        // A row is followed by a comma, unless it's the last in its statement, when it gets a semicolon.
+        rows.writeCastVoteRecord(out, count, batchId, recordId, statements.startRow(doBulk && isLast));
+        statements.endRow();
 
         // If we're not doing bulk insert, we just print the cvrContestInfo into the same file as the
         // Cast_vote_record value. If we are doing bulk insert, they go into separate files.
-        // If we're doing bulk inserts, the separate lines should be separated by a comma,
-        // unless it's the last vote, in which case it gets a semicolon.
-        // If not bulk, they're separate statements and all need a semicolon.
-        if(doBulk) {
-          out_cvr_contest_info.println(cvrContestInfoValue + (isLast ? ";" : ",") );
-        } else {
-          out.println(cvrContestInfoValue + ";");
-        }
+        rows.writeCvrContestInfo(doBulk ? out_cvr_contest_info : out, count, cvrContestInfoStatements.startRow(isLast));
+        cvrContestInfoStatements.endRow();
 
         count++;
       }
     }
+
+    statements.finish();
+    cvrContestInfoStatements.finish();
+  }
+
+  /*
+   * Splits the rows written to one file into INSERT statements of rowsPerInsert rows each (or all of them, if 0),
+   * and the statements into transactions of commitEvery statements (or no explicit transactions, if 0).
+   */
+  private static class StatementChunker {
+    private final OutputStream out;
+    // The INSERT ... VALUES line at the start of each statement, or null if the rows include it.
+    private final byte[] insertLine;
+    private final int rowsPerInsert;
+    private final int commitEvery;
+    private int rowsInStatement = 0;
+    private boolean endsStatement;
+    private int statementsInTransaction = 0;
+
+    StatementChunker(OutputStream out, String insert, int rowsPerInsert, int commitEvery) {
+      this.out = out;
+      this.insertLine = insert == null ? null : (insert + System.lineSeparator()).getBytes(UTF_8);
+      this.rowsPerInsert = rowsPerInsert;
+      this.commitEvery = commitEvery;
+    }
+
+    /**
+     * Start a row, beginning a transaction and/or statement first if need be.
+     * @param isLast whether this is the last row of all.
+     * @return whether this row ends its statement.
+     */
+    boolean startRow(boolean isLast) throws IOException {
+      if (rowsInStatement == 0) {
+        if (commitEvery > 0 && statementsInTransaction == 0) {
+          writeLine(BEGIN);
+        }
+        if (insertLine != null) {
+          out.write(insertLine);
+        }
+      }
+      rowsInStatement++;
+      endsStatement = isLast || rowsInStatement == rowsPerInsert;
+      return endsStatement;
+    }
+
+    // Finish the row, committing if it ended the last statement of a transaction.
+    void endRow() throws IOException {
+      if (endsStatement) {
+        rowsInStatement = 0;
+        statementsInTransaction++;
+        if (statementsInTransaction == commitEvery) {
+          writeLine(COMMIT);
+          statementsInTransaction = 0;
+        }
+      }
+    }
+
+    // Commit the last transaction, if it isn't already.
+    void finish() throws IOException {
+      if (commitEvery > 0 && statementsInTransaction > 0) {
+        writeLine(COMMIT);
+        statementsInTransaction = 0;
+      }
+    }
+
+    private void writeLine(String line) throws IOException {
+      out.write((line + System.lineSeparator()).getBytes(UTF_8));
+    }
+  }
+
+  /*
+   * Write destination.sql, containing the county and contest INSERTs and the \copy commands, and the two COPY files
+   * it loads.
+   */
+  private static void writeCopyContest(int countyAndContestID, String comment, String destinationFilePath,
+      SanitisedElectionData electionData, PgCopyWriter.Format copyFormat, GzipSettings gzip) throws Exception {
+    System.out.println("Building COPY data");
+    String castVoteRecordPath = destinationFilePath + "_cast_vote_record" + copyFormat.fileExtension;
+    String cvrContestInfoPath = destinationFilePath + "_cvr_contest_info" + copyFormat.fileExtension;
+
+    try (Sha256SumOutputStream castVoteRecordHashed = Sha256Sums.create(castVoteRecordPath, gzip);
+        PgCopyWriter castVoteRecordOut = new PgCopyWriter(castVoteRecordHashed, copyFormat);
+        Sha256SumOutputStream cvrContestInfoHashed = Sha256Sums.create(cvrContestInfoPath, gzip);
+        PgCopyWriter cvrContestInfoOut = new PgCopyWriter(cvrContestInfoHashed, copyFormat)) {
+      System.out.println("Building COPY values for contest number "+countyAndContestID);
+      CorlaCopyRows rows = new CorlaCopyRows(countyAndContestID, electionData.getMetadata().getCandidates(),
+          electionData.getVotes());
+      while (rows.next()) {
+        rows.writeCastVoteRecord(castVoteRecordOut);
+        rows.writeCvrContestInfo(cvrContestInfoOut);
+      }
+      castVoteRecordOut.finish();
+      cvrContestInfoOut.finish();
+      castVoteRecordHashed.finish();
+      cvrContestInfoHashed.finish();
+    }
+
+    try (Sha256SumOutputStream hashed = Sha256Sums.create(destinationFilePath + ".sql");
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(hashed, UTF_8)))) {
+      writeComment(out, comment);
+      writeSQLCountyAndContestInfo(out, countyAndContestID, electionData.getMetadata());
+      // psql meta-commands have to be on one line.
+      out.println("\\copy " + CorlaCopyRows.CAST_VOTE_RECORD_COLUMNS + copySource(castVoteRecordPath, gzip) + " WITH (FORMAT " + copyFormat.sqlName + ")");
+      out.println("\\copy " + CorlaCopyRows.CVR_CONTEST_INFO_COLUMNS + copySource(cvrContestInfoPath, gzip) + " WITH (FORMAT " + copyFormat.sqlName + ")");
+      if (out.checkError()) {
+        throw new IOException("Couldn't write " + destinationFilePath + ".sql");
+      }
+      hashed.finish();
+      // Closing writes the sidecar, and PrintWriter would keep an error doing that to itself too.
+      out.close();
+      if (out.checkError()) {
+        throw new IOException("Couldn't write " + destinationFilePath + ".sql" + Sha256Sums.SUFFIX);
+      }
+    }
+  }
+
+  // The FROM clause for \copy: the file itself, or if it is gzipped, gzip -dc of it.
+  private static String copySource(String path, GzipSettings gzip) {
+    if (gzip == null) {
+      return " FROM '" + path.replace("'", "''") + "'";
+    } else {
+      return " FROM PROGRAM 'gzip -dc \"" + (path + GzipSettings.SUFFIX).replace("'", "''") + "\"'";
+    }
   }
 
   // Note there is NO EFFORT AT PROPER SQL ESCAPING - this is just a scratch file for test data
@@ -287,13 +516,13 @@ public class StvToSqlTranslatorUtil {
     out.println("--");
   }
 
-  private static void writeMetadataRow(PrintWriter out, int contestID, ElectionData electionData) {
+  private static void writeMetadataRow(PrintWriter out, int contestID, SanitisedElectionData electionData) {
 
     out.println("// Contest "+electionData.getMetadata().getName().getElectorate());
     out.println("private static final String nameContest_"+contestID+" = \""+electionData.getMetadata().getName().getElectorate()+"\";");
     out.println("private static final List<String> choicesContest_"+contestID+" = List.of(\""+
         electionData.getMetadata().getCandidates().stream().map(Candidate::getName).collect(Collectors.joining("\",\""))+"\");");
-    int ballotCount  = electionData.countBallots();
+    int ballotCount  = electionData.getBallotCount();
     out.println("private static final int ballotCountContest_"+contestID+" = "+ballotCount+";");
     out.println("private static final double difficultyContest_"+contestID+" = 0; // TODO - get correct value.");
   }
@@ -1,7 +1,5 @@
 package au.org.democracydevelopers.utils.domain.cvr;
 
-import java.util.List;
-
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -20,7 +18,10 @@ public class Cvr {
   private String imprintedId;
   private String precinctPortion = "Precinct 1";
   private String ballotType = "Ballot 1 - Type 1";
-  private List<Integer> votes;
+  private int numberOfCandidates;
+  // Sparse representation of the vote: the candidate indices in preference order. This is shared between
+  // all the Cvrs with the same preferences, and expanded to the n^2 vote columns only when written.
+  private int[] preferences;
 
   @Override
   public String toString() {
@@ -32,16 +33,25 @@ public class Cvr {
         .append(imprintedId).append(",")
         .append(precinctPortion).append(",")
         .append(ballotType).append(",");
-    for (int i = 0; i < votes.size(); i++) {
-      builder
-//          .append("\"")
-          .append(votes.get(i));
-//          .append("\"");
-      if (i < votes.size() - 1) {
-        builder.append(",");
+    return appendVoteColumns(builder, numberOfCandidates, preferences).toString();
+  }
+
+  /**
+   * Append the numberOfCandidates^2 vote columns for this list of preferences. The columns are grouped by rank,
+   * then candidate, so if candidate c is at index i, there is a 1 in the c'th column of the i-th preference group.
+   * Everything else is 0.
+   */
+  public static StringBuilder appendVoteColumns(StringBuilder builder, int numberOfCandidates, int[] preferences) {
+    for (int i = 0; i < numberOfCandidates; i++) {
+      int marked = i < preferences.length ? preferences[i] : -1;
+      for (int c = 0; c < numberOfCandidates; c++) {
+        if (i > 0 || c > 0) {
+          builder.append(',');
+        }
+        builder.append(c == marked ? '1' : '0');
       }
     }
-    return builder.toString();
+    return builder;
   }
 
 }
@@ -0,0 +1,56 @@
+package au.org.democracydevelopers.utils.domain.raireservice;
+
+import au.org.democracydevelopers.utils.domain.stv.BallotTable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The same contest as a ContestRequest, but with each distinct ranking sent once, as candidate indices, with the
+ * number of ballots that cast it. Its size depends on the number of distinct rankings rather than the number of
+ * ballots, so even a million-ballot contest is a few kilobytes.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AggregatedContestRequest {
+   private String contestName;
+   private int totalAuditableBallots;
+   private Integer timeProvisionForResult;
+   private List<String> candidates;
+   private List<WeightedVote> votes;
+
+   /**
+    * Build the request from a table of distinct ballots, in the table's order. The ballots' entries are indices
+    * into candidates.
+    */
+   public static AggregatedContestRequest fromBallotTable(String contestName, Integer timeProvisionForResult,
+       List<String> candidates, BallotTable table) {
+      if (table.getTotalCount() > Integer.MAX_VALUE) {
+         throw new RuntimeException("Too many ballots for a ContestRequest: " + table.getTotalCount());
+      }
+      List<WeightedVote> votes = new ArrayList<>(table.size());
+      for (int b = 0; b < table.size(); b++) {
+         votes.add(new WeightedVote(List.copyOf(table.getBallot(b)), table.getCount(b)));
+      }
+      return new AggregatedContestRequest(contestName, (int) table.getTotalCount(), timeProvisionForResult,
+          candidates, votes);
+   }
+
+   /**
+    * Expand this into the ContestRequest the raire-service takes, with a list of candidate names for every ballot.
+    * The copies of each ranking are the same list, so this only costs a reference per ballot.
+    */
+   public ContestRequest toContestRequest() {
+      List<List<String>> expanded = new ArrayList<>(totalAuditableBallots);
+      for (WeightedVote vote : votes) {
+         List<String> names = vote.getPreferences().stream().map(candidates::get).toList();
+         expanded.addAll(Collections.nCopies(vote.getCount(), names));
+      }
+      return new ContestRequest(contestName, totalAuditableBallots, timeProvisionForResult, candidates, expanded);
+   }
+}
@@ -0,0 +1,19 @@
+package au.org.democracydevelopers.utils.domain.raireservice;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One distinct ranking in an AggregatedContestRequest: the candidates' indices in preference order, and the
+ * number of ballots that ranked them that way.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WeightedVote {
+   private List<Integer> preferences;
+   private int count;
+}
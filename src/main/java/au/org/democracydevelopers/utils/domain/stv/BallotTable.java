@@ -0,0 +1,345 @@
+package au.org.democracydevelopers.utils.domain.stv;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A table of distinct ballots (lists of candidate indices) and the number of times each was cast.
+ * This replaces a HashMap<List<Integer>, Integer>, which boxes every preference and needs a node,
+ * a list and an array per distinct ballot. Here all the preferences are packed end to end in one
+ * int array, counts are plain ints, and lookup is by open addressing into an int array of slots.
+ * Ballots are numbered 0 .. size()-1 in the order that the HashMap would have iterated over them,
+ * which is also the iteration order of the map view. The writers go through the ballots in this
+ * order, so it has to match, or every regenerated CSV and SQL file (and its .sha256sum) would
+ * change. The order is worked out, once, the first time the table is read after a new ballot is
+ * added, by building a transient HashMap of views of the ballots (a node, a view and a boxed index
+ * per distinct ballot), so that first read costs about what the old map did. Once the table is
+ * complete, that only happens once. The one place the old order wasn't reproducible, a bucket of
+ * colliding ballots that the HashMap had turned into a tree, is ordered by comparing the ballots
+ * instead (see BallotView).
+ */
+public class BallotTable {
+
+  private static final int EMPTY = -1;
+
+  // All the preferences, packed end to end. Ballot i is preferences[offsets[i]] .. preferences[offsets[i+1]-1].
+  private int[] preferences = new int[64];
+  private int[] offsets = new int[17];
+  private int[] counts = new int[16];
+  private int[] hashes = new int[16];
+  private int size = 0;
+  private long totalCount = 0;
+
+  // Open-addressed index into the ballots. Always a power of two in length, at most half full.
+  private int[] slots = emptySlots(32);
+
+  // Internally, ballots are stored in the order they were first added. order[i] is the stored
+  // index of the i-th ballot in HashMap order, and position is its inverse. Null when out of date.
+  // Volatile because the writers may read a finished table from several threads at once.
+  private volatile int[] order;
+  private int[] position;
+
+  /**
+   * Add count to the number of times this ballot was cast, adding it to the table if it's new.
+   * Only the first length entries of ballot are used, and the array is not retained.
+   */
+  public void add(int[] ballot, int length, int count) {
+    int hash = hash(ballot, length);
+    int mask = slots.length - 1;
+    int slot = hash & mask;
+    while (slots[slot] != EMPTY) {
+      int i = slots[slot];
+      if (hashes[i] == hash && matches(i, ballot, length)) {
+        counts[i] += count;
+        totalCount += count;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    ensureCapacity(length);
+    System.arraycopy(ballot, 0, preferences, offsets[size], length);
+    offsets[size + 1] = offsets[size] + length;
+    counts[size] = count;
+    hashes[size] = hash;
+    slots[slot] = size;
+    size++;
+    totalCount += count;
+    order = null;
+    position = null;
+
+    if (2 * size > slots.length) {
+      rehash(2 * slots.length);
+    }
+  }
+
+  public void add(List<Integer> ballot, int count) {
+    int[] unboxed = ballot.stream().mapToInt(Integer::intValue).toArray();
+    add(unboxed, unboxed.length, count);
+  }
+
+  /**
+   * @return the index of the ballot, or -1 if it is not in the table.
+   */
+  public int indexOf(int[] ballot, int length) {
+    int hash = hash(ballot, length);
+    int mask = slots.length - 1;
+    for (int slot = hash & mask; slots[slot] != EMPTY; slot = (slot + 1) & mask) {
+      int i = slots[slot];
+      if (hashes[i] == hash && matches(i, ballot, length)) {
+        ensureOrdered();
+        return position[i];
+      }
+    }
+    return -1;
+  }
+
+  // The number of distinct ballots.
+  public int size() {
+    return size;
+  }
+
+  // The total number of ballots, i.e. the sum of all the counts.
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  public int getCount(int i) {
+    return counts[stored(i)];
+  }
+
+  public int getLength(int i) {
+    return storedLength(stored(i));
+  }
+
+  // The candidate index at (zero-based) rank in ballot i.
+  public int getPreference(int i, int rank) {
+    return preferences[offsets[stored(i)] + rank];
+  }
+
+  public int[] getPreferences(int i) {
+    int s = stored(i);
+    return Arrays.copyOfRange(preferences, offsets[s], offsets[s + 1]);
+  }
+
+  /**
+   * A read-only view of ballot i as a list, without copying it.
+   */
+  public List<Integer> getBallot(int i) {
+    return storedBallot(stored(i));
+  }
+
+  private List<Integer> storedBallot(int s) {
+    return new BallotView(offsets[s], storedLength(s));
+  }
+
+  /*
+   * A ballot as a list, without copying it. These are Comparable (lexicographically) so that a
+   * HashMap of them orders a bucket that it has turned into a tree by comparing them, rather than
+   * by their identity hash codes, which would differ from run to run.
+   */
+  private final class BallotView extends AbstractList<Integer> implements Comparable<BallotView> {
+    private final int start;
+    private final int length;
+
+    BallotView(int start, int length) {
+      this.start = start;
+      this.length = length;
+    }
+
+    @Override
+    public Integer get(int rank) {
+      if (rank < 0 || rank >= length) {
+        throw new IndexOutOfBoundsException(rank);
+      }
+      return preferences[start + rank];
+    }
+
+    @Override
+    public int size() {
+      return length;
+    }
+
+    @Override
+    public int compareTo(BallotView other) {
+      // Only ever compared with views of the same table.
+      return Arrays.compare(preferences, start, start + length, preferences, other.start,
+          other.start + other.length);
+    }
+  }
+
+  /**
+   * A read-only Map view of the table, for code that expects the old Map<List<Integer>, Integer>.
+   * Iteration is in index order, i.e. the order the old HashMap iterated in.
+   */
+  public Map<List<Integer>, Integer> asMap() {
+    return new AbstractMap<>() {
+      @Override
+      public Set<Entry<List<Integer>, Integer>> entrySet() {
+        return new AbstractSet<>() {
+          @Override
+          public Iterator<Entry<List<Integer>, Integer>> iterator() {
+            return new Iterator<>() {
+              private int next = 0;
+
+              @Override
+              public boolean hasNext() {
+                return next < size;
+              }
+
+              @Override
+              public Entry<List<Integer>, Integer> next() {
+                if (next >= size) {
+                  throw new NoSuchElementException();
+                }
+                int i = next++;
+                return new SimpleImmutableEntry<>(getBallot(i), getCount(i));
+              }
+            };
+          }
+
+          @Override
+          public int size() {
+            return size;
+          }
+        };
+      }
+
+      @Override
+      public Integer get(Object key) {
+        if (!(key instanceof List<?> list)) {
+          return null;
+        }
+        int[] ballot = new int[list.size()];
+        for (int k = 0; k < ballot.length; k++) {
+          if (!(list.get(k) instanceof Integer c)) {
+            return null;
+          }
+          ballot[k] = c;
+        }
+        int i = indexOf(ballot, ballot.length);
+        return i == -1 ? null : getCount(i);
+      }
+
+      @Override
+      public boolean containsKey(Object key) {
+        return get(key) != null;
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private int storedLength(int s) {
+    return offsets[s + 1] - offsets[s];
+  }
+
+  private int stored(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException(i);
+    }
+    int[] current = order;
+    if (current == null) {
+      ensureOrdered();
+      current = order;
+    }
+    return current[i];
+  }
+
+  /*
+   * Put the ballots into the order a HashMap<List<Integer>, Integer> would iterate over them if
+   * they were put into it in the order they were first added, as getSanitisedVotesCount used to
+   * do. That depends on its bucket layout, tie-breaks and resizing history, so rather than copy
+   * it, build one (of views, so the ballots aren't copied) and read the order back out.
+   */
+  private void ensureOrdered() {
+    if (order == null) {
+      synchronized (this) {
+        if (order == null) {
+          computeOrder();
+        }
+      }
+    }
+  }
+
+  private void computeOrder() {
+    Map<List<Integer>, Integer> map = new HashMap<>();
+    for (int s = 0; s < size; s++) {
+      map.put(storedBallot(s), s);
+    }
+    int[] newOrder = new int[size];
+    int[] newPosition = new int[size];
+    int i = 0;
+    for (int s : map.values()) {
+      newOrder[i] = s;
+      newPosition[s] = i;
+      i++;
+    }
+    position = newPosition;
+    order = newOrder;
+  }
+
+  private boolean matches(int i, int[] ballot, int length) {
+    int start = offsets[i];
+    if (offsets[i + 1] - start != length) {
+      return false;
+    }
+    for (int k = 0; k < length; k++) {
+      if (preferences[start + k] != ballot[k]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void ensureCapacity(int length) {
+    if (size + 1 == counts.length) {
+      int newLength = 2 * counts.length;
+      counts = Arrays.copyOf(counts, newLength);
+      hashes = Arrays.copyOf(hashes, newLength);
+      offsets = Arrays.copyOf(offsets, newLength + 1);
+    }
+    if (offsets[size] + length > preferences.length) {
+      preferences = Arrays.copyOf(preferences, Math.max(2 * preferences.length, offsets[size] + length));
+    }
+  }
+
+  private void rehash(int newLength) {
+    slots = emptySlots(newLength);
+    int mask = newLength - 1;
+    for (int i = 0; i < size; i++) {
+      int slot = hashes[i] & mask;
+      while (slots[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = i;
+    }
+  }
+
+  private static int[] emptySlots(int length) {
+    int[] result = new int[length];
+    Arrays.fill(result, EMPTY);
+    return result;
+  }
+
+  // Polynomial hash of the candidate indices, then mixed so that the low bits (used for the slot) are well spread.
+  private static int hash(int[] ballot, int length) {
+    int h = length;
+    for (int k = 0; k < length; k++) {
+      h = 31 * h + ballot[k];
+    }
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,26 @@
+package au.org.democracydevelopers.utils.domain.stv;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * The parts of an ElectionData that the translators actually use, with the btl ballots already
+ * aggregated into a BallotTable of distinct preference lists and the number of times each was
+ * cast. Produced by StvStreamingReader without ever holding the full btl list in memory. As for
+ * ElectionData, atl ballots are ignored - we only record how many there were.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class SanitisedElectionData {
+  private Metadata metadata;
+  private List<BtlType> btlTypes;
+  private int informal;
+  // Number of atl and btl entries in the source file (not the number of ballots).
+  private int atlCount;
+  private int btlCount;
+  private int ballotCount;
+  private BallotTable votes;
+}
@@ -0,0 +1,69 @@
+package au.org.democracydevelopers.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import au.org.democracydevelopers.utils.Sha256Sums.Sha256SumOutputStream;
+import au.org.democracydevelopers.utils.domain.stv.BallotTable;
+import au.org.democracydevelopers.utils.domain.stv.SanitisedElectionData;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CvrCsvRegionWriterTests {
+
+  private static final int RECORDS_PER_BATCH = 78;
+  private static final String PRECINCT_PORTION = "Precinct 1";
+  private static final String BALLOT_TYPE = "Ballot 1 - Type 1";
+  private static final List<String> HEADER_LINES = List.of("Header,,,", "Columns,,,");
+
+  // Regions of 1000 rows, which don't start on a batch boundary, written by several threads, give the same file and
+  // sidecar as CvrCsvWriter writing it in order.
+  @Test
+  void testSameAsCvrCsvWriter(@TempDir Path dir) throws Exception {
+    SanitisedElectionData electionData =
+        StvStreamingReader.readSanitised(new File("src/main/resources/test-data/ballina.json"));
+    BallotTable votes = electionData.getVotes();
+    int numberOfCandidates = electionData.getMetadata().getCandidates().size();
+
+    Path expected = dir.resolve("expected.csv");
+    long ballots = writeInOrder(votes, numberOfCandidates, expected.toString());
+
+    Path actual = dir.resolve("actual.csv");
+    CvrCsvRegionWriter writer = new CvrCsvRegionWriter(RECORDS_PER_BATCH, numberOfCandidates, PRECINCT_PORTION,
+        BALLOT_TYPE);
+    assert writer.write(HEADER_LINES, votes, actual.toString(), 3, 1000) == ballots;
+
+    assert ballots > 10 * 1000;
+    assert Files.mismatch(expected, actual) == -1;
+    assert hash(expected).equals(hash(actual));
+  }
+
+  // As StvToCvrTranslatorUtil.buildCsv does it.
+  private static long writeInOrder(BallotTable votes, int numberOfCandidates, String path) throws Exception {
+    try (Sha256SumOutputStream hashed = Sha256Sums.create(path);
+        CvrCsvWriter out = new CvrCsvWriter(hashed, PRECINCT_PORTION, BALLOT_TYPE)) {
+      for (String line : HEADER_LINES) {
+        out.writeLine(line);
+      }
+      int count = 1;
+      for (int b = 0; b < votes.size(); b++) {
+        out.setBallot(numberOfCandidates, votes.getPreferences(b));
+        for (int i = 0; i < votes.getCount(b); i++) {
+          out.writeRow(count, 1, (count - 1) / RECORDS_PER_BATCH + 1, (count - 1) % RECORDS_PER_BATCH + 1);
+          count++;
+        }
+      }
+      out.flush();
+      hashed.finish();
+      return count - 1;
+    }
+  }
+
+  // The hash from a sidecar, without the path that follows it.
+  private static String hash(Path file) throws Exception {
+    return Files.readString(Path.of(file + Sha256Sums.SUFFIX), UTF_8).substring(0, 64);
+  }
+}
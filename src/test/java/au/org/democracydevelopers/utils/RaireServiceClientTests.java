@@ -0,0 +1,68 @@
+package au.org.democracydevelopers.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RaireServiceClientTests {
+
+  private static final String RESPONSE = "{\"solution\":{\"Ok\":{}}}";
+
+  // With --repeat, several submissions of the same request are in flight at once, all saving to the same response
+  // file. Each has to save to a file of its own first, or they tread on each other's.
+  @Test
+  void testRepeatedSubmissions(@TempDir Path dir) throws Exception {
+    Path request = dir.resolve("contest" + RaireServiceJsonWriter.SUFFIX);
+    Files.writeString(request, "{\"contestName\":\"Test\",\"timeProvisionForResult\":5}", UTF_8);
+
+    ExecutorService serverThreads = Executors.newFixedThreadPool(4);
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(serverThreads);
+    server.createContext("/raire/generate-assertions", exchange -> {
+      exchange.getRequestBody().readAllBytes();
+      byte[] body = RESPONSE.getBytes(UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        // Slowly, so that the responses overlap.
+        out.write(body, 0, body.length / 2);
+        out.flush();
+        Thread.sleep(50);
+        out.write(body, body.length / 2, body.length - body.length / 2);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    server.start();
+    try {
+      URI endpoint = URI.create("http://localhost:" + server.getAddress().getPort() + "/raire/generate-assertions");
+      RaireServiceClient client = new RaireServiceClient(endpoint, 4, 0, 0);
+      Map<File, List<RaireServiceClient.Submission>> results = client.submitAll(List.of(request.toFile()), 8);
+
+      List<RaireServiceClient.Submission> submissions = results.get(request.toFile());
+      assert submissions.size() == 8;
+      for (RaireServiceClient.Submission submission : submissions) {
+        assert submission.succeeded() : submission.error();
+      }
+      assert Files.readString(dir.resolve("contest" + RaireServiceClient.RESPONSE_SUFFIX), UTF_8).equals(RESPONSE);
+      // No temporary files left behind.
+      try (var files = Files.list(dir)) {
+        assert files.count() == 2;
+      }
+    } finally {
+      server.stop(0);
+      serverThreads.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package au.org.democracydevelopers.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StvToSqlTranslatorUtilTests {
+
+  private static final File SOURCE = new File("src/main/resources/test-data/Bellingen_VerySmallTest.json");
+
+  // The sidecar is written when the output is closed. If that fails, the translation fails, rather than leaving
+  // the output deleted and reporting success.
+  @Test
+  void testSidecarFailureIsReported(@TempDir Path dir) throws Exception {
+    String destination = dir.resolve("contest").toString();
+    // A directory where the sidecar should go can't be written over.
+    Files.createDirectory(Path.of(destination + ".sql" + Sha256Sums.SUFFIX));
+    boolean failed = false;
+    try {
+      StvToSqlTranslatorUtil.translateContest(1, "test", SOURCE, destination, new SqlOutputOptions());
+    } catch (IOException e) {
+      failed = true;
+    }
+    assert failed;
+  }
+
+  @Test
+  void testCopySidecarFailureIsReported(@TempDir Path dir) throws Exception {
+    String destination = dir.resolve("contest").toString();
+    Files.createDirectory(Path.of(destination + ".sql" + Sha256Sums.SUFFIX));
+    SqlOutputOptions outputOptions = new SqlOutputOptions();
+    outputOptions.setCopyFormat(PgCopyWriter.Format.TEXT);
+    boolean failed = false;
+    try {
+      StvToSqlTranslatorUtil.translateContest(1, "test", SOURCE, destination, outputOptions);
+    } catch (IOException e) {
+      failed = true;
+    }
+    assert failed;
+  }
+}
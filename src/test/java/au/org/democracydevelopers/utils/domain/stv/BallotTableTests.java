@@ -0,0 +1,106 @@
+package au.org.democracydevelopers.utils.domain.stv;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class BallotTableTests {
+
+  // The ballots come out in the order a HashMap filled in the same order iterates over them, through
+  // several resizes of both, and after more ballots are added to a table that has already been read.
+  @Test
+  void testSameOrderAsHashMap() {
+    Random random = new Random(1);
+    BallotTable table = new BallotTable();
+    Map<List<Integer>, Integer> map = new HashMap<>();
+    for (int round = 0; round < 3; round++) {
+      for (int k = 0; k < 5000; k++) {
+        // Short ballots of few candidates, so that there are plenty of repeats and hash collisions.
+        List<Integer> ballot = new ArrayList<>();
+        int length = 1 + random.nextInt(6);
+        for (int rank = 0; rank < length; rank++) {
+          ballot.add(random.nextInt(8));
+        }
+        int count = 1 + random.nextInt(3);
+        table.add(ballot, count);
+        // With put, as getSanitisedVotesCount did: merge puts new keys at the front of their bucket instead.
+        map.put(ballot, map.getOrDefault(ballot, 0) + count);
+      }
+      assertSameOrder(table, map);
+    }
+  }
+
+  // Enough ballots with the same List hashCode (31a + b) that HashMap turns their bucket into a tree. It orders a
+  // tree by comparing its keys if it can, so a HashMap of keys that compare as the table's ballots do is the one
+  // to match; lists that don't compare would be ordered by identity hash code, differently from run to run.
+  @Test
+  void testSameOrderAsHashMapWithCollidingHashes() {
+    BallotTable table = new BallotTable();
+    Map<List<Integer>, Integer> map = new HashMap<>();
+    for (int c = 0; c < 100; c++) {
+      List<Integer> ballot = List.of(c);
+      table.add(ballot, 1);
+      map.put(new ComparableBallot(ballot), 1);
+    }
+    for (int a = 10; a >= 0; a--) {
+      List<Integer> ballot = List.of(a, 31 * (10 - a));
+      table.add(ballot, 1);
+      map.put(new ComparableBallot(ballot), 1);
+    }
+    assertSameOrder(table, map);
+  }
+
+  @Test
+  void testIndexOf() {
+    BallotTable table = new BallotTable();
+    for (int c = 0; c < 100; c++) {
+      table.add(List.of(c, c + 1), 1);
+    }
+    for (int i = 0; i < table.size(); i++) {
+      assert table.indexOf(table.getPreferences(i), table.getLength(i)) == i;
+    }
+    assert table.indexOf(new int[] {1, 0}, 2) == -1;
+  }
+
+  private static void assertSameOrder(BallotTable table, Map<List<Integer>, Integer> map) {
+    assert table.size() == map.size();
+    int i = 0;
+    for (Map.Entry<List<Integer>, Integer> entry : map.entrySet()) {
+      assert table.getBallot(i).equals(entry.getKey());
+      assert table.getCount(i) == entry.getValue();
+      i++;
+    }
+    assert new ArrayList<>(table.asMap().keySet()).equals(new ArrayList<>(map.keySet()));
+  }
+
+  // A ballot that compares lexicographically, as the table's ballot views do.
+  private static final class ComparableBallot extends AbstractList<Integer> implements Comparable<ComparableBallot> {
+    private final List<Integer> ballot;
+
+    ComparableBallot(List<Integer> ballot) {
+      this.ballot = ballot;
+    }
+
+    @Override
+    public Integer get(int rank) {
+      return ballot.get(rank);
+    }
+
+    @Override
+    public int size() {
+      return ballot.size();
+    }
+
+    @Override
+    public int compareTo(ComparableBallot other) {
+      int[] mine = ballot.stream().mapToInt(Integer::intValue).toArray();
+      int[] theirs = other.ballot.stream().mapToInt(Integer::intValue).toArray();
+      return Arrays.compare(mine, theirs);
+    }
+  }
+}